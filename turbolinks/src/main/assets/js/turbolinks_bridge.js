@@ -1,6 +1,10 @@
 function TLWebView(controller) {
     this.controller = controller
     controller.adapter = this
+    this.port = null
+    this.nativeCallTargets = { webView: this, TLNativeEval: window.TLNativeEval }
+
+    window.addEventListener("message", this.receivePort.bind(this))
 
     var turbolinksIsReady = typeof Turbolinks !== "undefined" && Turbolinks !== null
     TurbolinksNative.setTurbolinksIsReady(turbolinksIsReady);
@@ -49,17 +53,25 @@ TLWebView.prototype = {
         }
     },
 
+    ping: function(identifier) {
+        this.callNative("pong", [identifier])
+    },
+
+    nativeEval: function(source) {
+        return TLNativeEval.run(source)
+    },
+
     // -----------------------------------------------------------------------
     // Adapter
     // -----------------------------------------------------------------------
 
     visitProposedToLocationWithAction: function(location, action) {
-        TurbolinksNative.visitProposedToLocationWithAction(location.absoluteURL, action);
+        this.callNative("visitProposedToLocationWithAction", [location.absoluteURL, action])
     },
 
     visitStarted: function(visit) {
         this.currentVisit = visit
-        TurbolinksNative.visitStarted(visit.identifier, visit.hasCachedSnapshot());
+        this.callNative("visitStarted", [visit.identifier, visit.hasCachedSnapshot()])
     },
 
     visitRequestStarted: function(visit) {
@@ -68,11 +80,11 @@ TLWebView.prototype = {
     },
 
     visitRequestCompleted: function(visit) {
-        TurbolinksNative.visitRequestCompleted(visit.identifier);
+        this.callNative("visitRequestCompleted", [visit.identifier])
     },
 
     visitRequestFailedWithStatusCode: function(visit, statusCode) {
-        TurbolinksNative.visitRequestFailedWithStatusCode(visit.identifier, statusCode);
+        this.callNative("visitRequestFailedWithStatusCode", [visit.identifier, statusCode])
     },
 
     visitRequestFinished: function(visit) {
@@ -81,17 +93,78 @@ TLWebView.prototype = {
     },
 
     visitRendered: function(visit) {
+        var self = this
         this.afterNextRepaint(function() {
-            TurbolinksNative.visitRendered(visit.identifier)
+            self.callNative("visitRendered", [visit.identifier])
         })
     },
 
     visitCompleted: function(visit) {
-        TurbolinksNative.visitCompleted(visit.identifier, visit.restorationIdentifier)
+        this.callNative("visitCompleted", [visit.identifier, visit.restorationIdentifier])
     },
 
     pageInvalidated: function() {
-        TurbolinksNative.pageInvalidated()
+        this.callNative("pageInvalidated", [])
+    },
+
+    // -----------------------------------------------------------------------
+    // Transport
+    // -----------------------------------------------------------------------
+
+    // Messages are JSON arrays: [method, args...] to native, and a list of
+    // [functionName, args...] calls from native, where a null functionName
+    // marks raw Javascript
+    callNative: function(method, args) {
+        if (this.port != null) {
+            this.port.postMessage(JSON.stringify([method].concat(args)))
+        } else {
+            TurbolinksNative[method].apply(TurbolinksNative, args)
+        }
+    },
+
+    // Only the port posted by native is accepted, once per page: messages posted by the webView
+    // have no source window and an empty origin, unlike those of iframes or other scripts
+    receivePort: function(event) {
+        if (event.data !== "turbolinks:port" || event.ports.length == 0) return
+        if (event.source !== null || event.origin !== "" || this.port != null) return
+
+        var self = this
+        this.port = event.ports[0]
+        this.port.onmessage = function(message) {
+            self.receiveNativeMessage(message.data)
+        }
+        this.callNative("portConnected", [])
+    },
+
+    receiveNativeMessage: function(data) {
+        var calls = JSON.parse(data)
+        for (var i = 0; i < calls.length; i++) {
+            try {
+                this.runNativeCall(calls[i])
+            } catch (e) {
+                console.error(e)
+            }
+        }
+    },
+
+    // Calls are limited to the functions of the bridge and of TLNativeEval
+    runNativeCall: function(call) {
+        if (call[0] == null) {
+            TLNativeEval.exec(call[1])
+            return
+        }
+
+        var path = call[0].split(".")
+        var target = path.length == 2 ? this.nativeCallTargets[path[0]] : null
+        if (target == null || !Object.prototype.hasOwnProperty.call(this.nativeCallTargets, path[0])) {
+            throw new Error("Native call not allowed: " + call[0])
+        }
+
+        var method = target[path[1]]
+        if (typeof method !== "function" || Object.prototype.hasOwnProperty.call(Object.prototype, path[1])) {
+            throw new Error("Native call not allowed: " + call[0])
+        }
+        method.apply(target, call.slice(1))
     },
 
     // -----------------------------------------------------------------------
@@ -105,8 +178,60 @@ TLWebView.prototype = {
     }
 }
 
-try {
-    window.webView = new TLWebView(Turbolinks.controller)
-} catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
-    TurbolinksNative.turbolinksDoesNotExist()
+// Runs scripts sent by TurbolinksSession.runJavascriptWithEvalResult and keeps the named scripts
+// registered through TurbolinksSession.registerJavascript, compiled once per page. Available on
+// pages without Turbolinks, too.
+if (typeof window.TLNativeEval === "undefined") {
+    window.TLNativeEval = {
+        scripts: {},
+
+        // Raw scripts, run in global scope. Errors are left to the caller
+        exec: function(source) {
+            (0, eval)(source)
+        },
+
+        run: function(source) {
+            window._result = null
+            try {
+                return (0, eval)(source)
+            } catch (e) {
+                return "JSError:" + e.message
+            }
+        },
+
+        register: function(name, source) {
+            this.scripts[name] = new Function("args", source)
+        },
+
+        invoke: function(name, args) {
+            var script = this.scripts[name]
+            if (script == null) return "JSError:Unknown script " + name
+
+            window._result = null
+            try {
+                return script(args)
+            } catch (e) {
+                return "JSError:" + e.message
+            }
+        }
+    }
+}
+
+function installTurbolinksBridge() {
+    // Document start scripts also run in iframes, and the bridge must only be installed once
+    if (window.top !== window || window.webView != null) return
+
+    try {
+        window.webView = new TLWebView(Turbolinks.controller)
+    } catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
+        TurbolinksNative.turbolinksDoesNotExist()
+    }
+}
+
+// When installed at document start the page's own scripts haven't run yet, so wait until the
+// document has been parsed before looking for Turbolinks
+if (document.readyState === "loading") {
+    document.addEventListener("DOMContentLoaded", installTurbolinksBridge)
+} else {
+    installTurbolinksBridge()
 }
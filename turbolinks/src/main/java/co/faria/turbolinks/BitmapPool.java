@@ -0,0 +1,218 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * <p>Pools mutable bitmaps by size and config, so back-to-back screenshots reuse their buffers
+ * instead of allocating new ones. The pool holds at most {@link #getMaxBytes()} bytes, dropping the
+ * oldest bitmaps first, and empties itself on memory pressure.</p>
+ */
+public class BitmapPool implements ComponentCallbacks2 {
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static volatile BitmapPool instance;
+
+    private final HashMap<String, ArrayDeque<Bitmap>> bitmapsBySize = new HashMap<>();
+    private final ArrayDeque<Bitmap> bitmapsByAge = new ArrayDeque<>();
+    private long maxBytes;
+    private long pooledBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param context Any Android context, used to register for memory callbacks.
+     * @return The shared bitmap pool.
+     */
+    public static BitmapPool getInstance(Context context) {
+        if (instance == null) {
+            synchronized (BitmapPool.class) {
+                if (instance == null) {
+                    long maxBytes = Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 16);
+                    BitmapPool pool = new BitmapPool(maxBytes);
+                    context.getApplicationContext().registerComponentCallbacks(pool);
+                    instance = pool;
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @param maxBytes The byte budget of the pool, 0 disables pooling.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+        trimTo(this.maxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * <p>Drops all pooled bitmaps.</p>
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns a pooled bitmap of the given size and config, or a new one. The content of a pooled
+     * bitmap is undefined.</p>
+     *
+     * @param width  The width.
+     * @param height The height.
+     * @param config The config, must not be {@link Bitmap.Config#HARDWARE}.
+     * @return A mutable bitmap.
+     */
+    Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            ArrayDeque<Bitmap> bitmaps = bitmapsBySize.get(key(width, height, config));
+            Bitmap bitmap = bitmaps != null ? bitmaps.pollLast() : null;
+            if (bitmap != null) {
+                bitmapsByAge.remove(bitmap);
+                pooledBytes -= byteCount(bitmap);
+                hitCount++;
+                return bitmap;
+            }
+            missCount++;
+        }
+
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * <p>Hands a bitmap back for reuse. It must not be used by the caller afterwards. Bitmaps that
+     * can't be reused, or don't fit the budget, are recycled.</p>
+     *
+     * @param bitmap The bitmap, may be null.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+
+        long bytes = byteCount(bitmap);
+        if (!bitmap.isMutable() || bytes > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        trimTo(maxBytes - bytes);
+
+        String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = bitmapsBySize.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            bitmapsBySize.put(key, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        bitmapsByAge.addLast(bitmap);
+        pooledBytes += bytes;
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of acquire() calls served from the pool.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of acquire() calls that allocated a new bitmap.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Share of acquire() calls served from the pool, between 0 and 1.
+     */
+    public synchronized float getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (float) total;
+    }
+
+    /**
+     * @return Number of pooled bitmaps dropped to stay within the budget or on memory pressure.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return Bytes currently held by the pool.
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    // ---------------------------------------------------
+    // ComponentCallbacks2
+    // ---------------------------------------------------
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(0);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(pooledBytes / 2);
+        }
+    }
+
+    @Override
+    public synchronized void onLowMemory() {
+        trimTo(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void trimTo(long bytes) {
+        Iterator<Bitmap> iterator = bitmapsByAge.iterator();
+        while (pooledBytes > bytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            bitmapsBySize.get(key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig())).remove(bitmap);
+            pooledBytes -= byteCount(bitmap);
+            evictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    private static String key(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    static long byteCount(Bitmap bitmap) {
+        return (long) bitmap.getWidth() * bitmap.getHeight() * (bitmap.getConfig() == Bitmap.Config.RGB_565 ? 2 : 4);
+    }
+}
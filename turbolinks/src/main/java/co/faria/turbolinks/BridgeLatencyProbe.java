@@ -0,0 +1,99 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+
+/**
+ * <p>Measures native to Javascript to native round trips over the bridge, per transport. Each
+ * {@link #ping(TurbolinksSession)} calls webView.ping() in the bridge, which answers with a pong
+ * through the active transport. Both transports are measured once the pong reached the main thread,
+ * including the thread hop of the Javascript interface.</p>
+ */
+public class BridgeLatencyProbe {
+    private final HashMap<String, Ping> pendingPings = new HashMap<>();
+    private final long[] roundTripCount = new long[BridgeTransport.values().length];
+    private final long[] totalRoundTripMicros = new long[BridgeTransport.values().length];
+    private final long[] maxRoundTripMicros = new long[BridgeTransport.values().length];
+    private long pingIdentifier;
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sends a ping through the session's bridge. Turbolinks has to be ready.</p>
+     *
+     * @param session The session whose bridge is measured.
+     */
+    public void ping(TurbolinksSession session) {
+        String identifier;
+        synchronized (this) {
+            identifier = "ping-" + (++pingIdentifier);
+            pendingPings.put(identifier, new Ping(session.getActiveBridgeTransport(), SystemClock.elapsedRealtimeNanos()));
+        }
+        session.runJavascript("webView.ping", identifier);
+    }
+
+    /**
+     * @param transport The transport the round trips were measured on.
+     * @return Number of completed round trips.
+     */
+    public synchronized long getRoundTripCount(BridgeTransport transport) {
+        return roundTripCount[transport.ordinal()];
+    }
+
+    /**
+     * @param transport The transport the round trips were measured on.
+     * @return Average round trip time in microseconds, 0 without measurements.
+     */
+    public synchronized long getAverageRoundTripMicros(BridgeTransport transport) {
+        int index = transport.ordinal();
+        return roundTripCount[index] == 0 ? 0 : totalRoundTripMicros[index] / roundTripCount[index];
+    }
+
+    /**
+     * @param transport The transport the round trips were measured on.
+     * @return Longest round trip time in microseconds.
+     */
+    public synchronized long getMaxRoundTripMicros(BridgeTransport transport) {
+        return maxRoundTripMicros[transport.ordinal()];
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Records the answer to a ping.</p>
+     *
+     * @param identifier The ping identifier passed back by the bridge.
+     */
+    synchronized void pong(String identifier) {
+        Ping ping = pendingPings.remove(identifier);
+        if (ping == null) return;
+
+        int index = ping.transport.ordinal();
+        long micros = (SystemClock.elapsedRealtimeNanos() - ping.startNanos) / 1000;
+        roundTripCount[index]++;
+        totalRoundTripMicros[index] += micros;
+        maxRoundTripMicros[index] = Math.max(maxRoundTripMicros[index], micros);
+    }
+
+    /**
+     * <p>Forgets pings that will never be answered, e.g. after the page was reloaded.</p>
+     */
+    synchronized void clear() {
+        pendingPings.clear();
+    }
+
+    private static final class Ping {
+        final BridgeTransport transport;
+        final long startNanos;
+
+        Ping(BridgeTransport transport, long startNanos) {
+            this.transport = transport;
+            this.startNanos = startNanos;
+        }
+    }
+}
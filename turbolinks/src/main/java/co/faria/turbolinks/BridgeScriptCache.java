@@ -0,0 +1,176 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Process-wide cache of the Turbolinks bridge injection script.</p>
+ *
+ * <p>The bridge asset is read, base64-encoded and wrapped into the injection snippet exactly once
+ * per process. All {@link TurbolinksSession} instances share the result.</p>
+ */
+public final class BridgeScriptCache {
+    static final String BRIDGE_ASSET_PATH = "js/turbolinks_bridge.js";
+
+    private static final String scriptInjectionFormat =
+            "(function(){var script = document.createElement('script'); script.type = 'text/javascript';script.innerHTML = window.atob('%s');document.head.appendChild(script);return true;})()";
+
+    private static final Object lock = new Object();
+    private static volatile String source;
+    private static volatile String injectionScript;
+    private static volatile boolean warmUpStarted;
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static volatile long buildTimeMillis;
+
+    private BridgeScriptCache() {
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns the ready-to-run bridge injection script, building it on first use.</p>
+     *
+     * @param context Any Android context.
+     * @return The injection script.
+     * @throws IOException If the bridge asset cannot be read.
+     */
+    static String getInjectionScript(Context context) throws IOException {
+        String script = injectionScript;
+        if (script != null) {
+            hitCount.incrementAndGet();
+            return script;
+        }
+
+        if (!build(context)) {
+            hitCount.incrementAndGet();
+        }
+        return injectionScript;
+    }
+
+    /**
+     * <p>Returns the plain bridge source, as used for document start injection.</p>
+     *
+     * @param context Any Android context.
+     * @return The bridge Javascript source.
+     * @throws IOException If the bridge asset cannot be read.
+     */
+    static String getSource(Context context) throws IOException {
+        String script = source;
+        if (script != null) {
+            return script;
+        }
+
+        build(context);
+        return source;
+    }
+
+    /**
+     * <p>Builds the injection script on a background thread, so the first cold boot doesn't pay
+     * for the asset I/O on the main thread. Only the first call has any effect.</p>
+     *
+     * @param context Any Android context.
+     */
+    static void warmUp(Context context) {
+        if (injectionScript != null || warmUpStarted) return;
+        warmUpStarted = true;
+
+        final Context applicationContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getInjectionScript(applicationContext);
+                } catch (IOException e) {
+                    TurbolinksLog.e("Error warming up bridge script: " + e);
+                }
+            }
+        }, "TurbolinksBridgeWarmUp");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * <p>Reads the bridge asset and builds both script variants, unless another thread got there
+     * first.</p>
+     *
+     * @param context Any Android context.
+     * @return Whether this call built the scripts.
+     * @throws IOException If the bridge asset cannot be read.
+     */
+    private static boolean build(Context context) throws IOException {
+        synchronized (lock) {
+            if (injectionScript != null) {
+                return false;
+            }
+
+            missCount.incrementAndGet();
+            long start = SystemClock.elapsedRealtime();
+            byte[] content = readAsset(context, BRIDGE_ASSET_PATH);
+            source = new String(content, StandardCharsets.UTF_8);
+            injectionScript = String.format(scriptInjectionFormat, Base64.encodeToString(content, Base64.NO_WRAP));
+            buildTimeMillis = SystemClock.elapsedRealtime() - start;
+            TurbolinksLog.d("Bridge script cached in " + buildTimeMillis + " ms");
+            return true;
+        }
+    }
+
+    /**
+     * <p>Reads a local asset file completely, without relying on {@link InputStream#available()}.</p>
+     *
+     * @param context  Any Android context.
+     * @param filePath Local file path relative to the assets directory.
+     * @return The file contents.
+     * @throws IOException If the file cannot be found or read in.
+     */
+    static byte[] readAsset(Context context, String filePath) throws IOException {
+        InputStream inputStream = context.getAssets().open(filePath);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(inputStream.available(), 1024));
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of injection script requests served from the already built script. Document
+     * start registrations through {@link #getSource(Context)} are not counted.
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of requests that had to build the script (at most one per process).
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Time, in milliseconds, spent reading and encoding the bridge script. Zero until built.
+     */
+    public static long getBuildTimeMillis() {
+        return buildTimeMillis;
+    }
+}
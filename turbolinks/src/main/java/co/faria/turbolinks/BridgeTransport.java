@@ -0,0 +1,19 @@
+package co.faria.turbolinks;
+
+/**
+ * <p>How the Turbolinks bridge and the native side talk to each other.</p>
+ */
+public enum BridgeTransport {
+    /**
+     * Javascript to native calls go through the TurbolinksNative @JavascriptInterface object,
+     * native to Javascript calls through evaluateJavascript. This is the default.
+     */
+    JAVASCRIPT_INTERFACE,
+
+    /**
+     * Both directions use one WebMessagePort pair, created with
+     * {@link android.webkit.WebView#createWebMessageChannel()} after the bridge is ready.
+     * Javascript to native messages arrive on the main thread, without the Java bridge thread hop.
+     */
+    WEB_MESSAGE_PORT
+}
@@ -0,0 +1,94 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.text.TextUtils;
+import android.webkit.WebView;
+
+import androidx.core.content.pm.PackageInfoCompat;
+
+/**
+ * <p>What happens to the webView's HTTP cache when a TurbolinksSession mounts a new webView or
+ * clears its current one.</p>
+ */
+public enum CacheRetentionPolicy {
+    /**
+     * The cache is left alone, fingerprinted assets are reused across webViews and app starts.
+     */
+    KEEP,
+
+    /**
+     * Only the in-memory cache is cleared, the disk cache is kept.
+     */
+    CLEAR_MEMORY,
+
+    /**
+     * The disk cache is cleared once after each app update, otherwise only the in-memory cache.
+     */
+    CLEAR_ON_VERSION_CHANGE,
+
+    /**
+     * Memory and disk cache are cleared every time. This is the default.
+     */
+    CLEAR_ALL;
+
+    static final String PREFERENCES_NAME = "turbolinks_cache";
+    static final String PREFERENCE_CACHE_VERSION = "cache_version";
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Clears the webView's cache as far as this policy requires.</p>
+     *
+     * @param context Any Android context, used to detect app updates.
+     * @param webView The webView whose cache is cleared.
+     */
+    void apply(Context context, WebView webView) {
+        switch (this) {
+            case KEEP:
+                break;
+            case CLEAR_MEMORY:
+                webView.clearCache(false);
+                break;
+            case CLEAR_ON_VERSION_CHANGE:
+                webView.clearCache(consumeVersionChange(context));
+                break;
+            case CLEAR_ALL:
+                webView.clearCache(true);
+                break;
+        }
+    }
+
+    /**
+     * @param context Any Android context.
+     * @return True the first time it's called after the app version changed.
+     */
+    static synchronized boolean consumeVersionChange(Context context) {
+        String version = appVersion(context);
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (TextUtils.equals(version, preferences.getString(PREFERENCE_CACHE_VERSION, null))) {
+            return false;
+        }
+
+        TurbolinksLog.d("App version changed to " + version + ", clearing webView disk cache");
+        preferences.edit().putString(PREFERENCE_CACHE_VERSION, version).apply();
+        return true;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static String appVersion(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return PackageInfoCompat.getLongVersionCode(packageInfo) + "-" + packageInfo.versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package co.faria.turbolinks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * <p>Counts calls and connections of the shared http client, to tell how often a call could reuse a
+ * pooled connection instead of paying for a new connect and TLS handshake.</p>
+ */
+class ConnectionReuseListener extends EventListener {
+    private long callCount;
+    private long failedCallCount;
+    private long acquiredCount;
+    private long newConnectionCount;
+    private long http2ConnectionCount;
+
+    @Override
+    public synchronized void callStart(Call call) {
+        callCount++;
+    }
+
+    @Override
+    public synchronized void callFailed(Call call, IOException ioe) {
+        failedCallCount++;
+    }
+
+    @Override
+    public synchronized void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        newConnectionCount++;
+        if (protocol == Protocol.HTTP_2) {
+            http2ConnectionCount++;
+        }
+    }
+
+    @Override
+    public synchronized void connectionAcquired(Call call, Connection connection) {
+        acquiredCount++;
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    synchronized long getCallCount() {
+        return callCount;
+    }
+
+    synchronized long getFailedCallCount() {
+        return failedCallCount;
+    }
+
+    synchronized long getNewConnectionCount() {
+        return newConnectionCount;
+    }
+
+    synchronized long getHttp2ConnectionCount() {
+        return http2ConnectionCount;
+    }
+
+    /**
+     * @return Number of times a call got a pooled connection.
+     */
+    synchronized long getReusedConnectionCount() {
+        return Math.max(acquiredCount - newConnectionCount, 0);
+    }
+
+    /**
+     * @return Share of acquired connections that came from the pool, between 0 and 1.
+     */
+    synchronized float getReuseRate() {
+        return acquiredCount == 0 ? 0 : getReusedConnectionCount() / (float) acquiredCount;
+    }
+}
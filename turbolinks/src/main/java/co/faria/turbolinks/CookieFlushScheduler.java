@@ -0,0 +1,180 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.webkit.CookieManager;
+
+/**
+ * <p>Persists cookies received by the okhttp client. The cookies themselves are written to the
+ * {@link CookieManager} right away by the caller, so requests the webView makes on its own see them;
+ * only the flush to disk is deferred. It happens once per burst, {@link #FLUSH_DELAY_MILLIS} after the
+ * last write, on a background thread. When the app goes to the background it happens right away, so
+ * no cookie is lost if the process is killed.</p>
+ */
+class CookieFlushScheduler implements ComponentCallbacks2 {
+    static final long FLUSH_DELAY_MILLIS = 1000;
+
+    private static volatile CookieFlushScheduler instance;
+
+    private final Handler handler;
+    private boolean lifecycleRegistered;
+    private int unflushedCount;
+
+    private int maxUnflushedCount;
+    private long flushCount;
+    private long totalFlushMillis;
+    private long maxFlushMillis;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private CookieFlushScheduler() {
+        HandlerThread thread = new HandlerThread("TurbolinksCookies");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * @return The shared flush scheduler, the CookieManager is shared as well.
+     */
+    static CookieFlushScheduler getInstance() {
+        if (instance == null) {
+            synchronized (CookieFlushScheduler.class) {
+                if (instance == null) {
+                    instance = new CookieFlushScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Registers for memory callbacks, to flush when the app goes to the background. Calling it
+     * more than once has no effect.</p>
+     *
+     * @param context Any Android context.
+     */
+    synchronized void registerLifecycle(Context context) {
+        if (lifecycleRegistered) return;
+
+        context.getApplicationContext().registerComponentCallbacks(this);
+        lifecycleRegistered = true;
+    }
+
+    /**
+     * <p>Schedules the flush of the current burst, pushed back by every call.</p>
+     *
+     * @param count Number of cookies just written to the CookieManager.
+     */
+    void written(int count) {
+        if (count == 0) return;
+
+        synchronized (this) {
+            unflushedCount += count;
+            maxUnflushedCount = Math.max(maxUnflushedCount, unflushedCount);
+        }
+
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * <p>Flushes the cookie store in the background, ahead of anything else queued.</p>
+     */
+    void flushNow() {
+        handler.removeCallbacks(flushRunnable);
+        handler.postAtFrontOfQueue(flushRunnable);
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of cookies written but not yet flushed to disk.
+     */
+    synchronized int getUnflushedCount() {
+        return unflushedCount;
+    }
+
+    /**
+     * @return Highest number of cookies waiting for a flush at once.
+     */
+    synchronized int getMaxUnflushedCount() {
+        return maxUnflushedCount;
+    }
+
+    /**
+     * @return Number of times the cookie store was flushed.
+     */
+    synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return Average time in milliseconds of a cookie store flush.
+     */
+    synchronized long getAverageFlushMillis() {
+        return flushCount == 0 ? 0 : totalFlushMillis / flushCount;
+    }
+
+    /**
+     * @return Longest time in milliseconds of a cookie store flush.
+     */
+    synchronized long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    // ---------------------------------------------------
+    // ComponentCallbacks2
+    // ---------------------------------------------------
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level == TRIM_MEMORY_UI_HIDDEN) {
+            flushNow();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void flush() {
+        synchronized (this) {
+            if (unflushedCount == 0) return;
+            unflushedCount = 0;
+        }
+
+        long start = SystemClock.uptimeMillis();
+        CookieManager.getInstance().flush();
+        long duration = SystemClock.uptimeMillis() - start;
+
+        synchronized (this) {
+            flushCount++;
+            totalFlushMillis += duration;
+            maxFlushMillis = Math.max(maxFlushMillis, duration);
+        }
+        TurbolinksLog.d("Cookies flushed in " + duration + " ms");
+    }
+}
@@ -0,0 +1,461 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.net.Uri;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>Keeps digest fingerprinted assets, like /assets/application-&lt;sha&gt;.js, on disk. Their
+ * content never changes for a given name, so a cached copy is served straight from disk, without
+ * revalidation, and survives the webView cache being cleared on mount.</p>
+ *
+ * <p>Misses are loaded with the shared http client, with the webView's cookies for the url, and
+ * written to disk while the webView reads them.
+ * The cache lives under the app's cache directory, and the least recently used assets are deleted
+ * once it exceeds its size. Pass it to {@link TurbolinksSession#setAssetCache} to enable it.</p>
+ */
+public class FingerprintedAssetCache {
+    static final long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+    static final String DIRECTORY_NAME = "turbolinks_assets";
+    static final Pattern RAILS_ASSET_PATTERN = Pattern.compile("/assets/.+-[0-9a-f]{32,64}\\.(js|css)$");
+    static final Pattern WEBPACKER_PACK_PATTERN = Pattern.compile("/packs/.+-[0-9a-f]{8,}\\.(js|css|map)$");
+    private static final String FILE_EXTENSION = ".asset";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final List<String> STORED_HEADERS = Arrays.asList("Access-Control-Allow-Origin", "Timing-Allow-Origin");
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final File directory;
+    private final long maxBytes;
+    private final List<Pattern> patterns;
+    private final OkHttpClient client;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // file name -> bytes
+    private boolean entriesLoaded;
+    private long sizeBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long bytesServed;
+    private long bytesStored;
+
+    /**
+     * @param context  Any Android context.
+     * @param maxBytes Maximum size of the cache on disk.
+     * @param patterns Patterns of fingerprinted url paths, matched with {@link java.util.regex.Matcher#find()}.
+     */
+    public FingerprintedAssetCache(Context context, long maxBytes, List<Pattern> patterns) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        this.maxBytes = maxBytes;
+        this.patterns = new ArrayList<>(patterns);
+        this.client = TurbolinksHttpClient.getClient().newBuilder()
+                .connectTimeout(RequestInterceptor.DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(RequestInterceptor.DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * <p>Caches Rails asset pipeline and Webpacker fingerprinted files.</p>
+     *
+     * @param context Any Android context.
+     */
+    public FingerprintedAssetCache(Context context) {
+        this(context, DEFAULT_MAX_BYTES, Arrays.asList(RAILS_ASSET_PATTERN, WEBPACKER_PACK_PATTERN));
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Deletes all cached assets.</p>
+     */
+    public synchronized void clear() {
+        loadEntries();
+        for (String name : entries.keySet()) {
+            new File(directory, name).delete();
+        }
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param url The url of a request.
+     * @return True if the url path matches one of the fingerprint patterns.
+     */
+    boolean matches(Uri url) {
+        String path = url.getPath();
+        if (path == null) return false;
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).find()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * <p>Serves a fingerprinted asset from disk, or loads and caches it. Called on a webView network
+     * thread.</p>
+     *
+     * @param request The request.
+     * @return The response, null if the request isn't for a fingerprinted asset or loading failed.
+     */
+    WebResourceResponse intercept(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        if (!"GET".equals(request.getMethod()) || !matches(url)) return null;
+
+        String name = fileName(url);
+        WebResourceResponse cached = read(name);
+        if (cached != null) return cached;
+
+        synchronized (this) {
+            missCount++;
+        }
+        return load(request, name);
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of assets served from disk.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of assets loaded from the network.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Share of assets served from disk, between 0 and 1.
+     */
+    public synchronized float getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (float) total;
+    }
+
+    /**
+     * @return Number of bytes served from disk, without touching the network.
+     */
+    public synchronized long getBytesServed() {
+        return bytesServed;
+    }
+
+    /**
+     * @return Number of bytes written to disk.
+     */
+    public synchronized long getBytesStored() {
+        return bytesStored;
+    }
+
+    /**
+     * @return Current size of the cache on disk.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private WebResourceResponse read(String name) {
+        File file = new File(directory, name);
+        long bytes;
+        synchronized (this) {
+            loadEntries();
+            Long entry = entries.get(name); // access order
+            if (entry == null || !file.exists()) return null;
+            bytes = entry;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            String mimeType = input.readUTF();
+            String encoding = input.readUTF();
+            HashMap<String, String> headers = new HashMap<>();
+            for (int i = input.readInt(); i > 0; i--) {
+                headers.put(input.readUTF(), input.readUTF());
+            }
+            headers.put("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+
+            synchronized (this) {
+                hitCount++;
+                bytesServed += bytes;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new WebResourceResponse(mimeType, encoding.isEmpty() ? null : encoding, 200, "OK", headers, input);
+        } catch (IOException e) {
+            TurbolinksLog.e("Reading asset failed: " + e.getMessage());
+            closeQuietly(input);
+            synchronized (this) {
+                Long removed = entries.remove(name);
+                sizeBytes -= removed != null ? removed : 0;
+            }
+            file.delete();
+            return null;
+        }
+    }
+
+    private WebResourceResponse load(WebResourceRequest request, String name) {
+        String url = request.getUrl().toString();
+        Request.Builder builder = new Request.Builder().url(url);
+        for (Map.Entry<String, String> entry : request.getRequestHeaders().entrySet()) {
+            builder.addHeader(entry.getKey(), entry.getValue());
+        }
+
+        // The webView adds cookies itself, they're missing from intercepted requests
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null && !request.getRequestHeaders().containsKey("Cookie")) {
+            builder.header("Cookie", cookies);
+        }
+
+        Response response;
+        try {
+            response = client.newCall(builder.build()).execute();
+        } catch (IOException e) {
+            TurbolinksLog.d("Loading asset failed, falling back: " + e.getMessage());
+            return null;
+        }
+
+        if (response.code() != 200) {
+            // Let the webView handle anything unusual itself
+            response.close();
+            return null;
+        }
+
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        String mimeType = contentType != null ? contentType.type() + "/" + contentType.subtype() : DEFAULT_MIME_TYPE;
+        String encoding = contentType != null && contentType.charset() != null ? contentType.charset().name() : "";
+
+        HashMap<String, String> headers = new HashMap<>();
+        for (String header : STORED_HEADERS) {
+            String value = response.header(header);
+            if (value != null) headers.put(header, value);
+        }
+
+        InputStream stream = body.byteStream();
+        File temporary = new File(directory, name + "." + System.nanoTime() + TEMPORARY_EXTENSION);
+        DataOutputStream output = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("No cache directory");
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeUTF(mimeType);
+            output.writeUTF(encoding);
+            output.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                output.writeUTF(header.getKey());
+                output.writeUTF(header.getValue());
+            }
+            stream = new TeeInputStream(stream, output, temporary, name);
+        } catch (IOException e) {
+            TurbolinksLog.e("Caching asset failed: " + e.getMessage());
+            closeQuietly(output);
+            temporary.delete();
+        }
+
+        headers.put("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        return new WebResourceResponse(mimeType, encoding.isEmpty() ? null : encoding, 200, "OK", headers, stream);
+    }
+
+    private synchronized void commit(File temporary, String name, long bodyBytes) {
+        File file = new File(directory, name);
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            return;
+        }
+
+        Long previous = entries.put(name, file.length());
+        sizeBytes += file.length() - (previous != null ? previous : 0);
+        bytesStored += bodyBytes;
+        trim();
+    }
+
+    private void loadEntries() {
+        if (entriesLoaded) return;
+        entriesLoaded = true;
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        // Oldest first, the last modified time is bumped on every read
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                file.delete(); // left over from a killed process
+            } else if (file.getName().endsWith(FILE_EXTENSION)) {
+                entries.put(file.getName(), file.length());
+                sizeBytes += file.length();
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            sizeBytes -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * @return The file name for the url, the query is ignored as the name is fingerprinted.
+     */
+    static String fileName(Uri url) {
+        String key = url.getScheme() + "://" + url.getAuthority() + url.getPath();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + FILE_EXTENSION.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(FILE_EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode()) + FILE_EXTENSION;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * <p>Copies the body to the cache file while the webView reads it. The file is only committed
+     * once the body was read completely, a failed write just stops the copy.</p>
+     */
+    private final class TeeInputStream extends FilterInputStream {
+        private final File temporary;
+        private final String name;
+        private OutputStream output;
+        private long bytes;
+
+        TeeInputStream(InputStream in, OutputStream output, File temporary, String name) {
+            super(in);
+            this.output = output;
+            this.temporary = temporary;
+            this.name = name;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finish(true);
+            } else {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count == -1) {
+                finish(true);
+            } else {
+                write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the copy
+            finish(false);
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish(false);
+            super.close();
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (output == null) return;
+            try {
+                output.write(buffer, offset, count);
+                bytes += count;
+            } catch (IOException e) {
+                TurbolinksLog.e("Caching asset failed: " + e.getMessage());
+                finish(false);
+            }
+        }
+
+        private void finish(boolean complete) {
+            if (output == null) return;
+            OutputStream finished = output;
+            output = null;
+
+            try {
+                finished.close();
+            } catch (IOException e) {
+                complete = false;
+            }
+
+            if (complete) {
+                commit(temporary, name, bytes);
+            } else {
+                temporary.delete();
+            }
+        }
+    }
+}
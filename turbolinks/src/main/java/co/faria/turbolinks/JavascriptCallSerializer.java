@@ -0,0 +1,135 @@
+package co.faria.turbolinks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * <p>Serializes the parameters of native to Javascript calls into a comma delimited list of JSON
+ * values.</p>
+ *
+ * <p>Strings, booleans and integral numbers -- which is what the bridge calls use -- are written
+ * directly into a reused StringBuilder. Anything else falls back to a shared Gson instance. Output
+ * matches Gson with HTML escaping disabled. Each thread gets its own serializer.</p>
+ */
+final class JavascriptCallSerializer {
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<JavascriptCallSerializer> instances = new ThreadLocal<JavascriptCallSerializer>() {
+        @Override
+        protected JavascriptCallSerializer initialValue() {
+            return new JavascriptCallSerializer();
+        }
+    };
+
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private StringBuilder builder = new StringBuilder(256);
+
+    private JavascriptCallSerializer() {
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>JSONifies the given params, without modifying the params array.</p>
+     *
+     * @param params Any number of parameter values, may be null.
+     * @return The comma delimited JSON values, an empty string if there are no params.
+     */
+    static String serializeArguments(Object... params) {
+        return instances.get().serialize(params);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private String serialize(Object[] params) {
+        if (params == null || params.length == 0) return "";
+
+        // Don't hold on to the memory of an unusually large call
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            builder = new StringBuilder(256);
+        }
+
+        builder.setLength(0);
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) builder.append(',');
+            write(params[i]);
+        }
+        return builder.toString();
+    }
+
+    private void write(Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            builder.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            builder.append(((Number) value).longValue());
+        } else {
+            gson.toJson(value, builder);
+        }
+    }
+
+    private void writeString(String value) {
+        builder.append('"');
+
+        int length = value.length();
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else if (c < 0x20) {
+                replacement = controlCharacterReplacement(c);
+            } else {
+                continue;
+            }
+
+            builder.append(value, last, i);
+            if (replacement != null) {
+                builder.append(replacement);
+            } else {
+                builder.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+            }
+            last = i + 1;
+        }
+        builder.append(value, last, length);
+
+        builder.append('"');
+    }
+
+    /**
+     * @return The short escape sequence for a control character, null if it has to be written as
+     * unicode escape.
+     */
+    private static String controlCharacterReplacement(char c) {
+        switch (c) {
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\f':
+                return "\\f";
+            default:
+                return null;
+        }
+    }
+}
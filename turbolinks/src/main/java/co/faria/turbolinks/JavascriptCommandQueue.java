@@ -0,0 +1,246 @@
+package co.faria.turbolinks;
+
+import android.view.Choreographer;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Collects the native to Javascript calls issued within one main thread frame and runs them as a
+ * single evaluateJavascript payload, in the order they were issued.</p>
+ *
+ * <p>A failing command doesn't prevent the following ones from running, just like separate
+ * loadUrl("javascript:") calls: its error is rethrown from a timeout, so it still reaches
+ * window.onerror as an uncaught error. Raw Javascript runs as its own indirect eval, so its var and
+ * function declarations end up in the global scope rather than in a block.</p>
+ *
+ * <p>With the {@link BridgeTransport#WEB_MESSAGE_PORT} transport connected, the payload is posted to
+ * the bridge's port instead, as a JSON list of [functionName, args...] calls. The bridge only calls
+ * functions of webView and TLNativeEval by name; any other function call is sent as raw
+ * Javascript.</p>
+ */
+public class JavascriptCommandQueue implements Choreographer.FrameCallback {
+    private final WebView webView;
+    private final MainThreadDispatcher mainThreadDispatcher = MainThreadDispatcher.getInstance();
+    private final Runnable scheduleFlush = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(JavascriptCommandQueue.this);
+        }
+    };
+
+    // Function names, or null for raw Javascript, with the matching serialized arguments
+    private final ArrayList<String> functionNames = new ArrayList<>();
+    private final ArrayList<String> arguments = new ArrayList<>();
+    private final StringBuilder payload = new StringBuilder();
+    private boolean flushScheduled;
+    private boolean released;
+    private WebMessagePort messagePort;
+
+    private long flushCount;
+    private long commandCount;
+    private int maxCommandsPerFlush;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * @param webView The webView the commands are executed in.
+     */
+    JavascriptCommandQueue(WebView webView) {
+        this.webView = webView;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Queues a function call. May be called from any thread.</p>
+     *
+     * @param functionName The Javascript function name only (no parenthesis or parameters).
+     * @param args         The already JSONified, comma delimited arguments.
+     */
+    void enqueue(String functionName, String args) {
+        synchronized (this) {
+            if (released) {
+                TurbolinksLog.e("Error running " + functionName + " on a released webView!");
+                return;
+            }
+
+            functionNames.add(functionName);
+            arguments.add(args);
+
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+
+        mainThreadDispatcher.run(scheduleFlush);
+    }
+
+    /**
+     * <p>Queues raw Javascript. May be called from any thread.</p>
+     *
+     * @param javascript The raw Javascript to be executed, fully escaped/encoded in advance.
+     */
+    void enqueueRaw(String javascript) {
+        enqueue(null, javascript);
+    }
+
+    /**
+     * <p>Drops all pending commands and stops accepting new ones. Called when the webView is
+     * unmounted.</p>
+     */
+    void release() {
+        synchronized (this) {
+            released = true;
+            functionNames.clear();
+            arguments.clear();
+        }
+
+        if (MainThreadDispatcher.isMainThread()) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * <p>Switches the queue to post its payloads to the bridge's port, or back to evaluateJavascript
+     * if null.</p>
+     *
+     * @param messagePort The native end of the bridge's WebMessageChannel.
+     */
+    synchronized void setMessagePort(WebMessagePort messagePort) {
+        this.messagePort = messagePort;
+    }
+
+    /**
+     * @return The port payloads are posted to, null when evaluateJavascript is used.
+     */
+    synchronized WebMessagePort getMessagePort() {
+        return messagePort;
+    }
+
+    // ---------------------------------------------------
+    // Choreographer.FrameCallback
+    // ---------------------------------------------------
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * <p>Runs all pending commands as one payload. Must be called on the main thread.</p>
+     */
+    void flush() {
+        final String script;
+        final WebMessagePort port;
+
+        synchronized (this) {
+            flushScheduled = false;
+
+            int count = functionNames.size();
+            if (released || count == 0) return;
+
+            port = messagePort;
+            payload.setLength(0);
+            if (port != null) {
+                appendMessage(count);
+            } else {
+                appendScript(count);
+            }
+            script = payload.toString();
+
+            functionNames.clear();
+            arguments.clear();
+
+            flushCount++;
+            commandCount += count;
+            maxCommandsPerFlush = Math.max(maxCommandsPerFlush, count);
+        }
+
+        if (port != null) {
+            port.postMessage(new WebMessage(script));
+        } else {
+            webView.evaluateJavascript(script, null);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void appendScript(int count) {
+        for (int i = 0; i < count; i++) {
+            payload.append("try{");
+            String functionName = functionNames.get(i);
+            if (functionName != null) {
+                payload.append(functionName).append('(').append(arguments.get(i)).append(')');
+            } else {
+                payload.append("(0,eval)(").append(JavascriptCallSerializer.serializeArguments(arguments.get(i))).append(')');
+            }
+            payload.append("}catch(e){setTimeout(function(){throw e})}\n");
+        }
+    }
+
+    private void appendMessage(int count) {
+        payload.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) payload.append(',');
+
+            String functionName = functionNames.get(i);
+            String args = arguments.get(i);
+            if (functionName != null && !isBridgeFunction(functionName)) {
+                payload.append("[null,").append(JavascriptCallSerializer.serializeArguments(functionName + "(" + args + ")")).append(']');
+            } else if (functionName != null) {
+                payload.append('[').append(JavascriptCallSerializer.serializeArguments(functionName));
+                if (!args.isEmpty()) {
+                    payload.append(',').append(args);
+                }
+                payload.append(']');
+            } else {
+                payload.append("[null,").append(JavascriptCallSerializer.serializeArguments(args)).append(']');
+            }
+        }
+        payload.append(']');
+    }
+
+    private static boolean isBridgeFunction(String functionName) {
+        return functionName.startsWith("webView.") || functionName.startsWith("TLNativeEval.");
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of evaluateJavascript payloads sent to the webView.
+     */
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return Number of commands sent to the webView.
+     */
+    public synchronized long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return The largest number of commands coalesced into one payload.
+     */
+    public synchronized int getMaxCommandsPerFlush() {
+        return maxCommandsPerFlush;
+    }
+
+    /**
+     * @return Average number of commands per payload, 0 if nothing was flushed yet.
+     */
+    public synchronized float getAverageCommandsPerFlush() {
+        return flushCount == 0 ? 0 : (float) commandCount / flushCount;
+    }
+}
@@ -0,0 +1,222 @@
+package co.faria.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * <p>Single, library-wide entry point for getting work onto the main thread.</p>
+ *
+ * <p>Tasks run inline when the caller already is on the main thread, otherwise they are posted to
+ * one shared Handler. Tasks can be keyed by visit identifier, so superseded tasks are coalesced or
+ * cancelled before they run. The time between posting a task and running it is tracked as queue
+ * delay.</p>
+ */
+public final class MainThreadDispatcher {
+    private static final MainThreadDispatcher instance = new MainThreadDispatcher();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, Task> keyedTasks = new HashMap<>();
+
+    private long postedCount;
+    private long inlineCount;
+    private long cancelledCount;
+    private long executedCount;
+    private long totalQueueDelayMillis;
+    private long maxQueueDelayMillis;
+
+    private MainThreadDispatcher() {
+    }
+
+    /**
+     * @return The shared dispatcher.
+     */
+    public static MainThreadDispatcher getInstance() {
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @return True if called on the main thread.
+     */
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * <p>Runs the runnable right away when on the main thread, otherwise posts it.</p>
+     *
+     * @param runnable A runnable to execute on the main thread.
+     */
+    void run(Runnable runnable) {
+        if (isMainThread()) {
+            synchronized (this) {
+                inlineCount++;
+            }
+            runnable.run();
+        } else {
+            post(runnable);
+        }
+    }
+
+    /**
+     * <p>Always posts the runnable, even when on the main thread. Use this when the work has to
+     * happen after the current message, e.g. after a layout pass.</p>
+     *
+     * @param runnable A runnable to execute on the main thread.
+     */
+    void post(Runnable runnable) {
+        postDelayed(runnable, 0);
+    }
+
+    /**
+     * <p>Posts the runnable with a delay. The delay doesn't count towards the queue delay.</p>
+     *
+     * @param runnable A runnable to execute on the main thread.
+     * @param delay    The delay in milliseconds.
+     */
+    void postDelayed(Runnable runnable, long delay) {
+        Task task = new Task(runnable, null, null, delay);
+        synchronized (this) {
+            postedCount++;
+        }
+        handler.postDelayed(task, delay);
+    }
+
+    /**
+     * <p>Like {@link #run(Runnable)}, but a still pending task with the same group and key is
+     * replaced by this one.</p>
+     *
+     * @param group    The group the task belongs to, typically a visit identifier. May be null.
+     * @param key      The kind of task within the group, e.g. the callback name.
+     * @param runnable A runnable to execute on the main thread.
+     */
+    void runCoalesced(String group, String key, Runnable runnable) {
+        String taskKey = group + ":" + key;
+
+        if (isMainThread()) {
+            synchronized (this) {
+                Task previous = keyedTasks.remove(taskKey);
+                if (previous != null) {
+                    handler.removeCallbacks(previous);
+                    cancelledCount++;
+                }
+                inlineCount++;
+            }
+            runnable.run();
+            return;
+        }
+
+        Task task = new Task(runnable, group, taskKey, 0);
+        synchronized (this) {
+            Task previous = keyedTasks.put(taskKey, task);
+            if (previous != null) {
+                handler.removeCallbacks(previous);
+                cancelledCount++;
+            }
+            postedCount++;
+        }
+        handler.post(task);
+    }
+
+    /**
+     * <p>Cancels all pending keyed tasks of a group, e.g. when a visit has been superseded.</p>
+     *
+     * @param group The group to cancel.
+     */
+    void cancel(String group) {
+        if (group == null) return;
+
+        synchronized (this) {
+            Iterator<Task> iterator = keyedTasks.values().iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (group.equals(task.group)) {
+                    handler.removeCallbacks(task);
+                    iterator.remove();
+                    cancelledCount++;
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of tasks posted to the main thread.
+     */
+    public synchronized long getPostedCount() {
+        return postedCount;
+    }
+
+    /**
+     * @return Number of tasks run inline, because the caller already was on the main thread.
+     */
+    public synchronized long getInlineCount() {
+        return inlineCount;
+    }
+
+    /**
+     * @return Number of tasks cancelled or replaced before they ran.
+     */
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return Average time in milliseconds between posting a task and running it.
+     */
+    public synchronized float getAverageQueueDelayMillis() {
+        return executedCount == 0 ? 0 : (float) totalQueueDelayMillis / executedCount;
+    }
+
+    /**
+     * @return Longest time in milliseconds between posting a task and running it.
+     */
+    public synchronized long getMaxQueueDelayMillis() {
+        return maxQueueDelayMillis;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private synchronized void taskStarted(Task task) {
+        if (task.key != null && keyedTasks.get(task.key) == task) {
+            keyedTasks.remove(task.key);
+        }
+
+        long queueDelay = Math.max(0, SystemClock.uptimeMillis() - task.dueTime);
+        executedCount++;
+        totalQueueDelayMillis += queueDelay;
+        maxQueueDelayMillis = Math.max(maxQueueDelayMillis, queueDelay);
+    }
+
+    private final class Task implements Runnable {
+        final Runnable runnable;
+        final String group;
+        final String key;
+        final long dueTime;
+
+        Task(Runnable runnable, String group, String key, long delay) {
+            this.runnable = runnable;
+            this.group = group;
+            this.key = key;
+            this.dueTime = SystemClock.uptimeMillis() + delay;
+        }
+
+        @Override
+        public void run() {
+            taskStarted(this);
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Suppresses a navigation to the same location with the same action when it fires again within a
+ * short window, as happens with shouldOverrideUrlLoading and with proposals from the bridge. A tap
+ * on a different link is never suppressed.</p>
+ *
+ * <p>Locations are compared without their fragment and trailing slash, and with lower case scheme
+ * and host. Times are taken from {@link SystemClock#uptimeMillis()}.</p>
+ */
+class NavigationDeduplicator {
+    static final long DEFAULT_WINDOW_MILLIS = 500;
+
+    private final LinkedHashMap<String, Long> recentNavigations = new LinkedHashMap<>();
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+    private long suppressedCount;
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Records a navigation and tells whether it's a duplicate of one within the window.</p>
+     *
+     * @param location The target location.
+     * @param action   The Turbolinks action.
+     * @return True if the navigation should go ahead, false if it's a duplicate.
+     */
+    synchronized boolean shouldNavigate(String location, String action) {
+        long now = SystemClock.uptimeMillis();
+        expire(now);
+
+        String key = normalize(location) + " " + action;
+        if (recentNavigations.containsKey(key)) {
+            suppressedCount++;
+            TurbolinksLog.d("Suppressing duplicate navigation: " + key);
+            return false;
+        }
+
+        recentNavigations.put(key, now);
+        return true;
+    }
+
+    /**
+     * @param windowMillis Time in milliseconds within which a repeated navigation is a duplicate, 0
+     *                     to disable.
+     */
+    synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = Math.max(windowMillis, 0);
+        expire(SystemClock.uptimeMillis());
+    }
+
+    synchronized long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return Number of suppressed duplicate navigations.
+     */
+    synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * @param location A location.
+     * @return The location without fragment and trailing slash, with lower case scheme and host.
+     */
+    static String normalize(String location) {
+        if (location == null) return "";
+
+        String normalized = location;
+        int fragmentStart = normalized.indexOf('#');
+        if (fragmentStart >= 0) {
+            normalized = normalized.substring(0, fragmentStart);
+        }
+
+        int authorityStart = normalized.indexOf("://");
+        if (authorityStart >= 0) {
+            int pathStart = normalized.indexOf('/', authorityStart + 3);
+            int end = pathStart >= 0 ? pathStart : normalized.length();
+            normalized = normalized.substring(0, end).toLowerCase(Locale.ROOT) + normalized.substring(end);
+        }
+
+        int queryStart = normalized.indexOf('?');
+        int pathEnd = queryStart >= 0 ? queryStart : normalized.length();
+        if (pathEnd > 0 && normalized.charAt(pathEnd - 1) == '/' && !normalized.startsWith("//", pathEnd - 2)) {
+            normalized = normalized.substring(0, pathEnd - 1) + normalized.substring(pathEnd);
+        }
+        return normalized;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void expire(long now) {
+        // Entries are in insertion order, so the oldest come first
+        Iterator<Map.Entry<String, Long>> iterator = recentNavigations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() < windowMillis) break;
+            iterator.remove();
+        }
+    }
+}
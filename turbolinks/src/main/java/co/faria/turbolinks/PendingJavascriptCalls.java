@@ -0,0 +1,207 @@
+package co.faria.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <p>Keeps track of Javascript evaluations whose result arrives later through the bridge, keyed by
+ * a generated call identifier. Any number of calls can be in flight at the same time; each one
+ * fails on its own timeout.</p>
+ */
+public class PendingJavascriptCalls {
+    static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+    static final String JS_ERROR_PREFIX = "\"JSError:";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, PendingCall> calls = new HashMap<>();
+    private long nextCallIdentifier;
+
+    private long completedCount;
+    private long failedCount;
+    private long timedOutCount;
+    private long cancelledCount;
+    private long totalLatencyMillis;
+    private long maxLatencyMillis;
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Registers a new pending call.</p>
+     *
+     * @param callback      The callback to notify once, with the result, an error or a timeout.
+     * @param timeoutMillis Time after which the call fails, 0 or less for no timeout.
+     * @return The call identifier to pass through the bridge.
+     */
+    String add(TurbolinksJSExecutionResultCallback callback, long timeoutMillis) {
+        PendingCall call;
+        synchronized (this) {
+            call = new PendingCall("tl-call-" + (++nextCallIdentifier), callback);
+            calls.put(call.identifier, call);
+        }
+
+        if (timeoutMillis > 0) {
+            handler.postDelayed(call, timeoutMillis);
+        }
+        return call.identifier;
+    }
+
+    /**
+     * <p>Resolves a pending call with the result passed back by the bridge.</p>
+     *
+     * @param callIdentifier The call identifier.
+     * @param result         The result, or a "JSError:" prefixed error message.
+     */
+    void complete(String callIdentifier, String result) {
+        if (result != null && result.startsWith(JS_ERROR_PREFIX)) {
+            fail(callIdentifier, new Error(result.replaceFirst(JS_ERROR_PREFIX, "")));
+            return;
+        }
+
+        PendingCall call = remove(callIdentifier);
+        if (call == null) return;
+
+        synchronized (this) {
+            completedCount++;
+        }
+        call.callback.executed(true, result, null);
+    }
+
+    /**
+     * <p>Fails a pending call.</p>
+     *
+     * @param callIdentifier The call identifier.
+     * @param error          The error passed to the callback.
+     */
+    void fail(String callIdentifier, Error error) {
+        PendingCall call = remove(callIdentifier);
+        if (call == null) return;
+
+        synchronized (this) {
+            failedCount++;
+        }
+        call.callback.executed(false, null, error);
+    }
+
+    /**
+     * <p>Fails all pending calls at once, e.g. when the session's references are cleaned.</p>
+     *
+     * @param reason The error message passed to the callbacks.
+     */
+    void cancelAll(String reason) {
+        ArrayList<PendingCall> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(calls.values());
+            calls.clear();
+            cancelledCount += cancelled.size();
+        }
+
+        for (PendingCall call : cancelled) {
+            handler.removeCallbacks(call);
+            call.callback.executed(false, null, new Error(reason));
+        }
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of calls waiting for their result.
+     */
+    public synchronized int getInFlightCount() {
+        return calls.size();
+    }
+
+    /**
+     * @return Number of calls that returned a result.
+     */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return Number of calls that failed with a Javascript error.
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return Number of calls that timed out.
+     */
+    public synchronized long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    /**
+     * @return Number of calls cancelled in bulk.
+     */
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return Average time in milliseconds until a call returned a result or error.
+     */
+    public synchronized long getAverageLatencyMillis() {
+        long finished = completedCount + failedCount;
+        return finished == 0 ? 0 : totalLatencyMillis / finished;
+    }
+
+    /**
+     * @return Longest time in milliseconds until a call returned a result or error.
+     */
+    public synchronized long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private PendingCall remove(String callIdentifier) {
+        PendingCall call;
+        synchronized (this) {
+            call = calls.remove(callIdentifier);
+            if (call == null) return null;
+
+            long latency = SystemClock.uptimeMillis() - call.startTime;
+            totalLatencyMillis += latency;
+            maxLatencyMillis = Math.max(maxLatencyMillis, latency);
+        }
+
+        handler.removeCallbacks(call);
+        return call;
+    }
+
+    /**
+     * A pending call, which is also its own timeout runnable.
+     */
+    private final class PendingCall implements Runnable {
+        final String identifier;
+        final TurbolinksJSExecutionResultCallback callback;
+        final long startTime = SystemClock.uptimeMillis();
+
+        PendingCall(String identifier, TurbolinksJSExecutionResultCallback callback) {
+            this.identifier = identifier;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            synchronized (PendingJavascriptCalls.this) {
+                if (calls.remove(identifier) == null) return;
+                timedOutCount++;
+            }
+
+            TurbolinksLog.d("Javascript call " + identifier + " timed out");
+            callback.executed(false, null, new Error("Timed out"));
+        }
+    }
+}
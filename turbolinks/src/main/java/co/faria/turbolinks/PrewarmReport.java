@@ -0,0 +1,127 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+
+/**
+ * <p>Timings of a {@link TurbolinksSession#prewarm(android.content.Context, String)}, showing how much
+ * of the cold boot was done before the first visit() arrived.</p>
+ *
+ * <p>All timestamps are {@link SystemClock#elapsedRealtime()} values, 0 while the step is still
+ * pending.</p>
+ */
+public class PrewarmReport {
+    private final String location;
+    private final long requestedAtMillis;
+    private long startedAtMillis;
+    private long webViewCreatedAtMillis;
+    private long turbolinksReadyAtMillis;
+    private long firstVisitAtMillis;
+
+    PrewarmReport(String location, long requestedAtMillis) {
+        this.location = location;
+        this.requestedAtMillis = requestedAtMillis;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @return The prewarmed location.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return Time in milliseconds the prewarm waited for the main thread to become idle.
+     */
+    public synchronized long getIdleWaitMillis() {
+        return duration(requestedAtMillis, startedAtMillis);
+    }
+
+    /**
+     * @return Time in milliseconds spent creating the session and its webView, close to 0 if
+     * the default session existed already.
+     */
+    public synchronized long getWebViewCreationMillis() {
+        return duration(startedAtMillis, webViewCreatedAtMillis);
+    }
+
+    /**
+     * @return Time in milliseconds from the start of the prewarm until Turbolinks was ready, -1 if
+     * it isn't (yet).
+     */
+    public synchronized long getColdBootMillis() {
+        return duration(startedAtMillis, turbolinksReadyAtMillis);
+    }
+
+    /**
+     * @return Time in milliseconds of the cold boot done before the first visit, -1 without a visit
+     * yet.
+     */
+    public synchronized long getHiddenColdBootMillis() {
+        if (firstVisitAtMillis == 0) return -1;
+
+        long end = turbolinksReadyAtMillis != 0 ? Math.min(turbolinksReadyAtMillis, firstVisitAtMillis) : firstVisitAtMillis;
+        return duration(startedAtMillis, end);
+    }
+
+    /**
+     * @return Time in milliseconds the first visit still had to wait for the cold boot, -1 if it
+     * isn't finished (yet).
+     */
+    public synchronized long getRemainingColdBootMillis() {
+        if (firstVisitAtMillis == 0 || turbolinksReadyAtMillis == 0) return -1;
+        return Math.max(turbolinksReadyAtMillis - firstVisitAtMillis, 0);
+    }
+
+    /**
+     * @return True if Turbolinks was already ready when the first visit arrived.
+     */
+    public synchronized boolean wasReadyAtFirstVisit() {
+        return turbolinksReadyAtMillis != 0 && firstVisitAtMillis != 0 && turbolinksReadyAtMillis <= firstVisitAtMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PrewarmReport{" + location +
+                ", idleWait=" + getIdleWaitMillis() + "ms" +
+                ", webViewCreation=" + getWebViewCreationMillis() + "ms" +
+                ", coldBoot=" + getColdBootMillis() + "ms" +
+                ", hidden=" + getHiddenColdBootMillis() + "ms" +
+                ", remaining=" + getRemainingColdBootMillis() + "ms}";
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    synchronized void markStarted() {
+        startedAtMillis = SystemClock.elapsedRealtime();
+    }
+
+    synchronized void markWebViewCreated() {
+        webViewCreatedAtMillis = SystemClock.elapsedRealtime();
+    }
+
+    synchronized void markTurbolinksReady() {
+        if (turbolinksReadyAtMillis == 0) {
+            turbolinksReadyAtMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    synchronized void markFirstVisit() {
+        if (firstVisitAtMillis == 0) {
+            firstVisitAtMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static long duration(long from, long to) {
+        return (from == 0 || to == 0) ? -1 : to - from;
+    }
+}
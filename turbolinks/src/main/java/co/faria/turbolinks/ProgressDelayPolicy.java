@@ -0,0 +1,266 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Picks the progress indicator delay per route from the visit latencies seen before. Latencies
+ * are kept in a small histogram per route pattern (path with numeric and hash-like segments
+ * replaced by ":id") and persisted across launches, together with the time the route was last
+ * recorded, so the least recently used routes are still the first to go after a restart.</p>
+ *
+ * <p>For a route that usually renders quickly, the indicator is delayed by the configured
+ * percentile of its latency, so it only shows up for unusually slow visits. For a route slower than
+ * {@link #getMaxDelayMillis()} the indicator is shown right away. Until a route has
+ * {@link #MIN_SAMPLES} samples, the caller's default delay is used.</p>
+ */
+public class ProgressDelayPolicy {
+    static final int MIN_SAMPLES = 5;
+    static final int MAX_ROUTES = 64;
+    static final int MAX_SAMPLES_PER_ROUTE = 200;
+    static final int DEFAULT_PERCENTILE = 75;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    // Upper bounds of the histogram buckets, the last bucket is open ended
+    static final long[] BUCKET_BOUNDS_MILLIS = {50, 100, 150, 200, 300, 400, 600, 800, 1000, 1500, 2000, 3000, 5000};
+
+    static final String PREFERENCES_NAME = "turbolinks_progress_delay";
+
+    private final SharedPreferences preferences;
+    private final LinkedHashMap<String, int[]> histograms = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean loaded;
+    private int percentile = DEFAULT_PERCENTILE;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * @param context Any Android context, used to persist the histograms.
+     */
+    public ProgressDelayPolicy(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @param percentile The latency percentile used as delay, between 1 and 99. Default is 75.
+     */
+    public synchronized void setPercentile(int percentile) {
+        this.percentile = Math.min(Math.max(percentile, 1), 99);
+    }
+
+    /**
+     * @param maxDelayMillis Routes slower than this show the indicator right away. Default is 1000.
+     */
+    public synchronized void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = Math.max(maxDelayMillis, 0);
+    }
+
+    public synchronized long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @param location     The visited location.
+     * @param defaultDelay The delay to use while the route has too few samples.
+     * @return The progress indicator delay in milliseconds.
+     */
+    public synchronized int getDelayMillis(String location, int defaultDelay) {
+        int[] histogram = histogram(routeOf(location), false);
+        if (histogram == null || total(histogram) < MIN_SAMPLES) {
+            return defaultDelay;
+        }
+
+        long latency = percentileLatency(histogram, percentile);
+        return latency > maxDelayMillis ? 0 : (int) latency;
+    }
+
+    /**
+     * <p>Records how long a visit took until it was first rendered, i.e. until the progress
+     * indicator was hidden.</p>
+     *
+     * @param location      The visited location.
+     * @param latencyMillis The visit latency in milliseconds.
+     */
+    public synchronized void recordLatency(String location, long latencyMillis) {
+        String route = routeOf(location);
+        int[] histogram = histogram(route, true);
+
+        histogram[bucketOf(latencyMillis)]++;
+        if (total(histogram) > MAX_SAMPLES_PER_ROUTE) {
+            // Halve all counts so the histogram follows changes in the route's latency
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] /= 2;
+            }
+        }
+
+        preferences.edit().putString(route, encode(histogram, System.currentTimeMillis())).apply();
+    }
+
+    /**
+     * <p>Forgets all recorded latencies.</p>
+     */
+    public synchronized void clear() {
+        histograms.clear();
+        loaded = true;
+        preferences.edit().clear().apply();
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param location A location.
+     * @return The route pattern of the location: host and path with identifier segments replaced.
+     */
+    static String routeOf(String location) {
+        Uri uri = Uri.parse(location != null ? location : "");
+        StringBuilder route = new StringBuilder();
+        if (uri.getHost() != null) {
+            route.append(uri.getHost());
+        }
+
+        for (String segment : uri.getPathSegments()) {
+            route.append('/').append(isIdentifier(segment) ? ":id" : segment);
+        }
+        return route.toString();
+    }
+
+    static int bucketOf(long latencyMillis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (latencyMillis <= BUCKET_BOUNDS_MILLIS[i]) return i;
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private int[] histogram(String route, boolean create) {
+        load();
+
+        int[] histogram = histograms.get(route);
+        if (histogram == null && create) {
+            histogram = new int[BUCKET_BOUNDS_MILLIS.length + 1];
+            histograms.put(route, histogram);
+            evictOldRoutes();
+        }
+        return histogram;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+
+        // getAll() has no order, restore least recently used first
+        List<Map.Entry<String, ?>> entries = new ArrayList<Map.Entry<String, ?>>(preferences.getAll().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, ?>>() {
+            @Override
+            public int compare(Map.Entry<String, ?> a, Map.Entry<String, ?> b) {
+                return Long.compare(lastUsedOf(String.valueOf(a.getValue())), lastUsedOf(String.valueOf(b.getValue())));
+            }
+        });
+
+        for (Map.Entry<String, ?> entry : entries) {
+            int[] histogram = decode(String.valueOf(entry.getValue()));
+            if (histogram != null) {
+                histograms.put(entry.getKey(), histogram);
+            }
+        }
+        evictOldRoutes();
+    }
+
+    private void evictOldRoutes() {
+        if (histograms.size() <= MAX_ROUTES) return;
+
+        SharedPreferences.Editor editor = preferences.edit();
+        Iterator<String> iterator = histograms.keySet().iterator();
+        while (histograms.size() > MAX_ROUTES && iterator.hasNext()) {
+            editor.remove(iterator.next());
+            iterator.remove();
+        }
+        editor.apply();
+    }
+
+    private static long percentileLatency(int[] histogram, int percentile) {
+        int total = total(histogram);
+        int rank = (int) Math.ceil(total * percentile / 100.0);
+
+        int seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i < BUCKET_BOUNDS_MILLIS.length ? BUCKET_BOUNDS_MILLIS[i] : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int total(int[] histogram) {
+        int total = 0;
+        for (int count : histogram) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static boolean isIdentifier(String segment) {
+        if (segment.length() >= 16 && segment.matches("[0-9a-fA-F-]+")) return true;
+        return TextUtils.isDigitsOnly(segment);
+    }
+
+    /**
+     * @return The bucket counts, comma separated, followed by ";" and the last used time.
+     */
+    static String encode(int[] histogram, long lastUsedMillis) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(histogram[i]);
+        }
+        return builder.append(';').append(lastUsedMillis).toString();
+    }
+
+    static int[] decode(String value) {
+        int separator = value.indexOf(';');
+        String[] counts = (separator >= 0 ? value.substring(0, separator) : value).split(",");
+        if (counts.length != BUCKET_BOUNDS_MILLIS.length + 1) return null;
+
+        int[] histogram = new int[counts.length];
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                histogram[i] = Integer.parseInt(counts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return The last used time of an encoded histogram, 0 if it was stored without one.
+     */
+    static long lastUsedOf(String value) {
+        int separator = value.indexOf(';');
+        if (separator < 0) return 0;
+
+        try {
+            return Long.parseLong(value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.webkit.WebResourceResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>Executes requests intercepted from the webView with the okhttp client, and turns the responses
+ * into {@link WebResourceResponse}s with status, reason and headers. The body is streamed to the
+ * webView as it arrives, never buffered.</p>
+ *
+ * <p>The client is bounded by connect, read and call timeouts, so a slow origin can't block a
+ * webView network thread indefinitely. On timeout, or any other failure, {@link #intercept} returns
+ * null and the request falls back to the webView's own network stack. The call timeout covers
+ * reading the body as well.</p>
+ */
+public class RequestInterceptor {
+    static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    static final long DEFAULT_READ_TIMEOUT_MILLIS = 15000;
+    static final long DEFAULT_CALL_TIMEOUT_MILLIS = 30000;
+    private static final String DEFAULT_MIME_TYPE = "text/html";
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * Receives redirect responses, which the webView can't follow from an intercepted request.
+     */
+    interface RedirectHandler {
+        /**
+         * @param location The redirect target.
+         */
+        void onRedirect(String location);
+    }
+
+    private final OkHttpClient client;
+
+    private long requestCount;
+    private long fallbackCount;
+    private long timeoutCount;
+    private long redirectCount;
+    private long totalResponseMillis;
+    private long maxResponseMillis;
+    private long lastResponseMillis;
+    private long totalBodyMillis;
+    private long completedBodyCount;
+    private long totalBytes;
+
+    /**
+     * @param client               The client, timeouts are applied to a copy of it.
+     * @param connectTimeoutMillis Connect timeout in milliseconds.
+     * @param readTimeoutMillis    Read timeout in milliseconds.
+     * @param callTimeoutMillis    Timeout in milliseconds of the whole call, including the body.
+     */
+    public RequestInterceptor(OkHttpClient client, long connectTimeoutMillis, long readTimeoutMillis, long callTimeoutMillis) {
+        this.client = client.newBuilder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @param client The client, the default timeouts are applied to a copy of it.
+     */
+    public RequestInterceptor(OkHttpClient client) {
+        this(client, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_CALL_TIMEOUT_MILLIS);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Executes the request. Called on a webView network thread.</p>
+     *
+     * @param request         The request.
+     * @param redirectHandler Receives the location of a redirect response.
+     * @return The response, null to let the webView load the request itself.
+     */
+    WebResourceResponse intercept(Request request, RedirectHandler redirectHandler) {
+        final long start = SystemClock.uptimeMillis();
+        Response response;
+        try {
+            response = client.newCall(request).execute();
+        } catch (InterruptedIOException e) {
+            TurbolinksLog.d("Intercepted request timed out, falling back: " + request.url());
+            recordFallback(true);
+            return null;
+        } catch (IOException e) {
+            TurbolinksLog.e("Intercepted request failed, falling back: " + e.getMessage());
+            recordFallback(false);
+            return null;
+        }
+
+        long responseMillis = SystemClock.uptimeMillis() - start;
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        String mimeType = contentType != null ? contentType.type() + "/" + contentType.subtype() : DEFAULT_MIME_TYPE;
+        String encoding = contentType != null && contentType.charset() != null ? contentType.charset().name() : DEFAULT_ENCODING;
+        InputStream stream = new MeteredInputStream(body.byteStream(), start);
+
+        String location = response.header("Location");
+        boolean redirect = response.isRedirect() && location != null;
+        recordResponse(responseMillis, redirect);
+        TurbolinksLog.d("Intercepted request: " + response.code() + " in " + responseMillis + " ms, " + request.url());
+
+        if (redirect) {
+            redirectHandler.onRedirect(location);
+        }
+
+        if (response.code() < 200 || (response.code() >= 300 && response.code() < 400)) {
+            // WebResourceResponse rejects 1xx and 3xx status codes, hand over the body as before
+            return new WebResourceResponse(mimeType, encoding, stream);
+        }
+
+        String reason = response.message().isEmpty() ? reasonPhrase(response.code()) : response.message();
+        return new WebResourceResponse(mimeType, encoding, response.code(), reason, headersOf(response), stream);
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of intercepted requests.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return Number of requests handed back to the webView after a failure or timeout.
+     */
+    public synchronized long getFallbackCount() {
+        return fallbackCount;
+    }
+
+    /**
+     * @return Number of requests that timed out.
+     */
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return Number of redirect responses.
+     */
+    public synchronized long getRedirectCount() {
+        return redirectCount;
+    }
+
+    /**
+     * @return Time in milliseconds until the headers of the last response arrived.
+     */
+    public synchronized long getLastResponseMillis() {
+        return lastResponseMillis;
+    }
+
+    /**
+     * @return Average time in milliseconds until the response headers arrived.
+     */
+    public synchronized long getAverageResponseMillis() {
+        long responses = requestCount - fallbackCount;
+        return responses == 0 ? 0 : totalResponseMillis / responses;
+    }
+
+    /**
+     * @return Longest time in milliseconds until the response headers arrived.
+     */
+    public synchronized long getMaxResponseMillis() {
+        return maxResponseMillis;
+    }
+
+    /**
+     * @return Average time in milliseconds until the webView finished reading a response body.
+     */
+    public synchronized long getAverageBodyMillis() {
+        return completedBodyCount == 0 ? 0 : totalBodyMillis / completedBodyCount;
+    }
+
+    /**
+     * @return Number of body bytes streamed to the webView.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private synchronized void recordFallback(boolean timeout) {
+        requestCount++;
+        fallbackCount++;
+        if (timeout) {
+            timeoutCount++;
+        }
+    }
+
+    private synchronized void recordResponse(long responseMillis, boolean redirect) {
+        requestCount++;
+        totalResponseMillis += responseMillis;
+        maxResponseMillis = Math.max(maxResponseMillis, responseMillis);
+        lastResponseMillis = responseMillis;
+        if (redirect) {
+            redirectCount++;
+        }
+    }
+
+    private synchronized void recordBody(long bodyMillis, long bytes) {
+        totalBodyMillis += bodyMillis;
+        completedBodyCount++;
+        totalBytes += bytes;
+    }
+
+    /**
+     * @return The headers, with repeated headers joined.
+     */
+    private static Map<String, String> headersOf(Response response) {
+        HashMap<String, String> headers = new HashMap<>();
+        for (String name : response.headers().names()) {
+            headers.put(name, TextUtils.join(", ", response.headers(name)));
+        }
+        return headers;
+    }
+
+    private static String reasonPhrase(int code) {
+        return code >= 400 ? "Error" : "OK";
+    }
+
+    /**
+     * <p>Counts the bytes the webView reads, and records the body time once it's closed.</p>
+     */
+    private final class MeteredInputStream extends FilterInputStream {
+        private final long start;
+        private long bytes;
+        private boolean closed;
+
+        MeteredInputStream(InputStream in, long start) {
+            super(in);
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) bytes++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) bytes += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                recordBody(SystemClock.uptimeMillis() - start, bytes);
+            }
+            super.close();
+        }
+    }
+}
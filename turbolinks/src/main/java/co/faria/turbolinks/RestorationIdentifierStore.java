@@ -0,0 +1,104 @@
+package co.faria.turbolinks;
+
+import android.os.Bundle;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Remembers the Turbolinks restoration identifier per fragment, so going back to a fragment
+ * restores its page and scroll position from Turbolinks' snapshot cache.</p>
+ *
+ * <p>Fragments are keyed by their class, their tag or container id and the back stack entry they
+ * are shown on, all of which the FragmentManager restores after configuration changes and process
+ * death. The fragment itself, including its arguments, is left untouched. The store holds the most
+ * recently used {@link #DEFAULT_CAPACITY} entries.</p>
+ */
+class RestorationIdentifierStore {
+    static final int DEFAULT_CAPACITY = 64;
+    private static final String STATE_KEYS = "co.faria.turbolinks.restorationKeys";
+    private static final String STATE_VALUES = "co.faria.turbolinks.restorationValues";
+
+    private final LinkedHashMap<String, String> identifiers;
+
+    RestorationIdentifierStore(final int capacity) {
+        this.identifiers = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param key   The key of the fragment showing the page, see {@link #keyOf(Fragment)}.
+     * @param value Restoration identifier provided by Turbolinks.
+     */
+    synchronized void put(String key, String value) {
+        identifiers.put(key, value);
+    }
+
+    /**
+     * @param key The key of the fragment showing the page, see {@link #keyOf(Fragment)}.
+     * @return The restoration identifier of the fragment, null if unknown.
+     */
+    synchronized String get(String key) {
+        return identifiers.get(key);
+    }
+
+    synchronized int size() {
+        return identifiers.size();
+    }
+
+    /**
+     * @param outState The bundle to save the entries to, oldest first.
+     */
+    synchronized void saveTo(Bundle outState) {
+        outState.putStringArrayList(STATE_KEYS, new ArrayList<>(identifiers.keySet()));
+        outState.putStringArrayList(STATE_VALUES, new ArrayList<>(identifiers.values()));
+    }
+
+    /**
+     * @param savedState A bundle previously passed to {@link #saveTo(Bundle)}.
+     */
+    synchronized void restoreFrom(Bundle savedState) {
+        ArrayList<String> keys = savedState.getStringArrayList(STATE_KEYS);
+        ArrayList<String> values = savedState.getStringArrayList(STATE_VALUES);
+        if (keys == null || values == null || keys.size() != values.size()) return;
+
+        for (int i = 0; i < keys.size(); i++) {
+            if (!identifiers.containsKey(keys.get(i))) {
+                identifiers.put(keys.get(i), values.get(i));
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the stable key of a fragment. Fragments not added to a FragmentManager can't be
+     * recognized after recreation and are keyed by instance. Must be called on the main thread, as
+     * it reads the FragmentManager's back stack.</p>
+     *
+     * @param fragment The fragment.
+     * @return The key.
+     */
+    static String keyOf(Fragment fragment) {
+        if (!fragment.isAdded()) {
+            return fragment.toString();
+        }
+
+        FragmentManager fragmentManager = fragment.getParentFragmentManager();
+        int backStackCount = fragmentManager.getBackStackEntryCount();
+        int backStackEntryId = backStackCount > 0 ? fragmentManager.getBackStackEntryAt(backStackCount - 1).getId() : -1;
+
+        String tag = fragment.getTag();
+        return fragment.getClass().getName() + "/" + (tag != null ? tag : "#" + fragment.getId()) + "@" + backStackEntryId;
+    }
+}
@@ -0,0 +1,178 @@
+package co.faria.turbolinks;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+
+/**
+ * <p>Decides whether a screenshot may be taken, and at which resolution, from the estimated bitmap
+ * size and the real heap headroom: the part of {@link Runtime#maxMemory()} not yet in use. A
+ * screenshot may take at most a quarter of the headroom.</p>
+ *
+ * <p>On low-RAM devices and under moderate system memory pressure screenshots are reduced, under
+ * critical pressure they're denied. Trim levels are forgotten after {@link #TRIM_LEVEL_TIMEOUT_MILLIS},
+ * since the system doesn't report when the pressure is over.</p>
+ */
+public class ScreenshotAdmissionPolicy implements ComponentCallbacks2 {
+    static final long TRIM_LEVEL_TIMEOUT_MILLIS = 30000;
+    static final int HEADROOM_DIVISOR = 4;
+
+    /**
+     * The outcome of an admission.
+     */
+    public enum Decision {
+        /**
+         * The screenshot is taken at the configured scale.
+         */
+        FULL,
+
+        /**
+         * The screenshot is taken at half the configured scale.
+         */
+        REDUCED,
+
+        /**
+         * No screenshot is taken.
+         */
+        DENIED
+    }
+
+    private static volatile ScreenshotAdmissionPolicy instance;
+
+    private final boolean lowRamDevice;
+    private int trimLevel;
+    private long trimLevelTime;
+
+    private final long[] decisionCounts = new long[Decision.values().length];
+    private Decision lastDecision;
+    private long lastHeadroomBytes;
+
+    ScreenshotAdmissionPolicy(boolean lowRamDevice) {
+        this.lowRamDevice = lowRamDevice;
+    }
+
+    /**
+     * @param context Any Android context, used to register for memory callbacks.
+     * @return The shared admission policy.
+     */
+    public static ScreenshotAdmissionPolicy getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ScreenshotAdmissionPolicy.class) {
+                if (instance == null) {
+                    ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+                    boolean lowRamDevice = activityManager != null && activityManager.isLowRamDevice();
+                    ScreenshotAdmissionPolicy policy = new ScreenshotAdmissionPolicy(lowRamDevice);
+                    context.getApplicationContext().registerComponentCallbacks(policy);
+                    instance = policy;
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Decides on a screenshot of the given full scale size, and records the decision.</p>
+     *
+     * @param fullBytes Estimated size in bytes of the screenshot at the configured scale.
+     * @return The decision.
+     */
+    Decision admit(long fullBytes) {
+        Runtime runtime = Runtime.getRuntime();
+        long headroom = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return admit(fullBytes, headroom);
+    }
+
+    /**
+     * @param fullBytes     Estimated size in bytes of the screenshot at the configured scale.
+     * @param headroomBytes Heap bytes still available.
+     * @return The decision.
+     */
+    synchronized Decision admit(long fullBytes, long headroomBytes) {
+        Decision decision;
+        long budget = headroomBytes / HEADROOM_DIVISOR;
+        int level = currentTrimLevel();
+
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            decision = Decision.DENIED;
+        } else if (fullBytes <= budget && !lowRamDevice && level < TRIM_MEMORY_RUNNING_MODERATE) {
+            decision = Decision.FULL;
+        } else if (fullBytes / 4 <= budget) {
+            // Half the scale in both dimensions
+            decision = Decision.REDUCED;
+        } else {
+            decision = Decision.DENIED;
+        }
+
+        decisionCounts[decision.ordinal()]++;
+        lastDecision = decision;
+        lastHeadroomBytes = headroomBytes;
+
+        TurbolinksLog.d("Screenshot admission: " + decision + " for " + fullBytes + " bytes, headroom " + headroomBytes + " bytes, trim level " + level);
+        return decision;
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @param decision The decision.
+     * @return Number of admissions that ended in the decision.
+     */
+    public synchronized long getDecisionCount(Decision decision) {
+        return decisionCounts[decision.ordinal()];
+    }
+
+    /**
+     * @return The last decision, null before the first screenshot.
+     */
+    public synchronized Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * @return The heap headroom in bytes at the last decision.
+     */
+    public synchronized long getLastHeadroomBytes() {
+        return lastHeadroomBytes;
+    }
+
+    // ---------------------------------------------------
+    // ComponentCallbacks2
+    // ---------------------------------------------------
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        // UI_HIDDEN only says the app went to the background, not that memory is short
+        if (level == TRIM_MEMORY_UI_HIDDEN) return;
+
+        trimLevel = level;
+        trimLevelTime = SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public synchronized void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private int currentTrimLevel() {
+        if (trimLevel != 0 && SystemClock.uptimeMillis() - trimLevelTime > TRIM_LEVEL_TIMEOUT_MILLIS) {
+            trimLevel = 0;
+        }
+        return trimLevel;
+    }
+}
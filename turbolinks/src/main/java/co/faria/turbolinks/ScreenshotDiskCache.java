@@ -0,0 +1,347 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Keeps screenshots on disk, keyed by location and orientation, so a page can be shown as
+ * placeholder during the cold boot after the process was killed. Screenshots are written as
+ * compressed WebP under the app's cache directory, and the least recently used ones are deleted once
+ * the cache exceeds its size.</p>
+ *
+ * <p>Reads and writes happen on a background thread. A screenshot is compressed straight from the
+ * caller's bitmap, which is therefore handed back through {@link #release(Bitmap, BitmapPool)}: it
+ * only goes back to the pool once its write is done.</p>
+ */
+public class ScreenshotDiskCache {
+    static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024;
+    static final int WEBP_QUALITY = 80;
+    static final String DIRECTORY_NAME = "turbolinks_screenshots";
+    private static final String FILE_EXTENSION = ".webp";
+
+    private final File directory;
+    private final long maxBytes;
+    final Handler handler;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // file name -> bytes
+    private final IdentityHashMap<Bitmap, BitmapPool> writing = new IdentityHashMap<>(); // screenshot -> pool to release it to, once written
+    private boolean entriesLoaded;
+    private long sizeBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long writeCount;
+    private long totalDecodeMillis;
+
+    /**
+     * @param context  Any Android context.
+     * @param maxBytes Maximum size of the cache on disk.
+     */
+    public ScreenshotDiskCache(Context context, long maxBytes) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        this.maxBytes = maxBytes;
+
+        HandlerThread thread = new HandlerThread("TurbolinksScreenshotCache");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                loadEntries();
+            }
+        });
+    }
+
+    /**
+     * @param context Any Android context.
+     */
+    public ScreenshotDiskCache(Context context) {
+        this(context, DEFAULT_MAX_BYTES);
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Deletes all cached screenshots.</p>
+     */
+    public void clear() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ScreenshotDiskCache.this) {
+                    for (String name : entries.keySet()) {
+                        new File(directory, name).delete();
+                    }
+                    entries.clear();
+                    sizeBytes = 0;
+                }
+            }
+        });
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param location    The location of the page.
+     * @param orientation The orientation the screenshot was taken in.
+     * @return True if a screenshot is cached. Only checks the in-memory index, false until the index
+     * was loaded from disk.
+     */
+    synchronized boolean contains(String location, int orientation) {
+        return entriesLoaded && entries.containsKey(fileName(location, orientation));
+    }
+
+    /**
+     * <p>Stores a screenshot. It's compressed in the background, the caller must hand it back through
+     * {@link #release(Bitmap, BitmapPool)} rather than to the pool directly.</p>
+     *
+     * @param location    The location of the page.
+     * @param orientation The orientation the screenshot was taken in.
+     * @param screenshot  The screenshot.
+     */
+    void put(String location, int orientation, final Bitmap screenshot) {
+        if (location == null || screenshot == null || screenshot.isRecycled()) return;
+
+        synchronized (this) {
+            if (writing.containsKey(screenshot)) return;
+            writing.put(screenshot, null);
+        }
+
+        final String name = fileName(location, orientation);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                write(name, screenshot);
+
+                BitmapPool pool;
+                synchronized (ScreenshotDiskCache.this) {
+                    pool = writing.remove(screenshot);
+                }
+                if (pool != null) {
+                    pool.release(screenshot);
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Hands a screenshot back to the pool, right away or once it has been written.</p>
+     *
+     * @param screenshot The screenshot, may be null.
+     * @param pool       The pool to release it to.
+     */
+    void release(Bitmap screenshot, BitmapPool pool) {
+        if (screenshot == null) return;
+
+        synchronized (this) {
+            if (writing.containsKey(screenshot)) {
+                writing.put(screenshot, pool);
+                return;
+            }
+        }
+        pool.release(screenshot);
+    }
+
+    /**
+     * <p>Reads a screenshot in the background. The callback is called on the main thread, with a
+     * mutable bitmap or null if none is cached.</p>
+     *
+     * @param location    The location of the page.
+     * @param orientation The orientation the screenshot was taken in.
+     * @param callback    Receives the screenshot.
+     */
+    void get(String location, int orientation, final ScreenshotEngine.Callback callback) {
+        final String name = fileName(location, orientation);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap screenshot = read(name);
+                MainThreadDispatcher.getInstance().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onScreenshot(screenshot);
+                    }
+                });
+            }
+        });
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of reads that found a screenshot.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of reads that found no screenshot.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Share of reads that found a screenshot, between 0 and 1.
+     */
+    public synchronized float getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (float) total;
+    }
+
+    /**
+     * @return Number of screenshots written.
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return Average time in milliseconds to decode a cached screenshot.
+     */
+    public synchronized long getAverageDecodeMillis() {
+        return hitCount == 0 ? 0 : totalDecodeMillis / hitCount;
+    }
+
+    /**
+     * @return Current size of the cache on disk.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void loadEntries() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            synchronized (this) {
+                entriesLoaded = true;
+            }
+            return;
+        }
+
+        // Oldest first, the last modified time is bumped on every read
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        synchronized (this) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_EXTENSION) && !entries.containsKey(file.getName())) {
+                    entries.put(file.getName(), file.length());
+                    sizeBytes += file.length();
+                }
+            }
+            entriesLoaded = true;
+            trim();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void write(String name, Bitmap screenshot) {
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        File temporary = new File(directory, name + ".tmp");
+        File file = new File(directory, name);
+
+        try (FileOutputStream output = new FileOutputStream(temporary)) {
+            if (!screenshot.compress(format, WEBP_QUALITY, output)) {
+                throw new IOException("Compression failed");
+            }
+        } catch (IOException e) {
+            TurbolinksLog.e("Writing screenshot failed: " + e.getMessage());
+            temporary.delete();
+            return;
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            return;
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(name, file.length());
+            sizeBytes += file.length() - (previous != null ? previous : 0);
+            writeCount++;
+            trim();
+        }
+    }
+
+    private Bitmap read(String name) {
+        File file = new File(directory, name);
+        long start = SystemClock.uptimeMillis();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true; // so it can go into the BitmapPool afterwards
+        Bitmap screenshot = file.exists() ? BitmapFactory.decodeFile(file.getPath(), options) : null;
+
+        synchronized (this) {
+            if (screenshot == null) {
+                missCount++;
+                return null;
+            }
+
+            hitCount++;
+            totalDecodeMillis += SystemClock.uptimeMillis() - start;
+            entries.get(name); // access order
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        return screenshot;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            sizeBytes -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    static String fileName(String location, int orientation) {
+        String key = orientation + ":" + location;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + FILE_EXTENSION.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(FILE_EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode()) + FILE_EXTENSION;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package co.faria.turbolinks;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.Window;
+
+/**
+ * <p>Takes the screenshots shown while the webView moves to a new TurbolinksView. The window content
+ * is copied with {@link PixelCopy} on a background thread, into a downscaled bitmap of the configured
+ * config, instead of drawing a full size ARGB_8888 bitmap on the main thread.</p>
+ *
+ * <p>Views that aren't attached to an activity window fall back to drawing, downscaled as well.
+ * Capture buffers come from the {@link BitmapPool}; hand screenshots back to it once they're no
+ * longer shown.</p>
+ */
+public class ScreenshotEngine {
+    static final float DEFAULT_SCALE = 0.5f;
+
+    /**
+     * Receives a finished screenshot on the main thread.
+     */
+    interface Callback {
+        /**
+         * @param screenshot The screenshot, null if it failed.
+         */
+        void onScreenshot(Bitmap screenshot);
+    }
+
+    private static volatile ScreenshotEngine instance;
+
+    private final Handler handler;
+    private float scale = DEFAULT_SCALE;
+    private Bitmap.Config config = Bitmap.Config.RGB_565;
+
+    private long captureCount;
+    private long failedCount;
+    private long totalCaptureMillis;
+    private long maxCaptureMillis;
+    private long lastCaptureBytes;
+    private long totalCaptureBytes;
+
+    private ScreenshotEngine() {
+        HandlerThread thread = new HandlerThread("TurbolinksScreenshots");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * @return The shared screenshot engine.
+     */
+    public static ScreenshotEngine getInstance() {
+        if (instance == null) {
+            synchronized (ScreenshotEngine.class) {
+                if (instance == null) {
+                    instance = new ScreenshotEngine();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @param scale Factor applied to the view size, between 0.1 and 1. Default is 0.5.
+     */
+    public synchronized void setScale(float scale) {
+        this.scale = Math.min(Math.max(scale, 0.1f), 1f);
+    }
+
+    /**
+     * @param config {@link Bitmap.Config#RGB_565} (default), {@link Bitmap.Config#ARGB_8888} or
+     *               {@link Bitmap.Config#HARDWARE}.
+     */
+    public synchronized void setBitmapConfig(Bitmap.Config config) {
+        if (config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.HARDWARE) {
+            throw new IllegalArgumentException("Unsupported screenshot config: " + config);
+        }
+        this.config = config;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Captures the view's content, if the {@link ScreenshotAdmissionPolicy} admits it. Must be
+     * called on the main thread; the callback is called on the main thread as well, possibly before
+     * this method returns.</p>
+     *
+     * @param view     The view to capture.
+     * @param callback Receives the screenshot.
+     * @return False if the screenshot was denied, the callback isn't called then.
+     */
+    boolean capture(View view, final Callback callback) {
+        final long start = SystemClock.uptimeMillis();
+        float scale;
+        final Bitmap.Config config;
+        synchronized (this) {
+            scale = this.scale;
+            config = this.config;
+        }
+
+        // Hardware screenshots are captured in software first, count 4 bytes per pixel either way
+        long fullBytes = (long) (view.getWidth() * scale) * (long) (view.getHeight() * scale) * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+        ScreenshotAdmissionPolicy.Decision decision = ScreenshotAdmissionPolicy.getInstance(view.getContext()).admit(fullBytes);
+        if (decision == ScreenshotAdmissionPolicy.Decision.DENIED) {
+            return false;
+        } else if (decision == ScreenshotAdmissionPolicy.Decision.REDUCED) {
+            scale /= 2;
+        }
+
+        final int width = Math.max(Math.round(view.getWidth() * scale), 1);
+        final int height = Math.max(Math.round(view.getHeight() * scale), 1);
+        final BitmapPool bitmapPool = BitmapPool.getInstance(view.getContext());
+        final Bitmap bitmap = bitmapPool.acquire(width, height, writableConfig(config));
+
+        Window window = windowOf(view.getContext());
+        if (window != null && view.isAttachedToWindow()) {
+            int[] location = new int[2];
+            view.getLocationInWindow(location);
+            Rect source = new Rect(location[0], location[1], location[0] + view.getWidth(), location[1] + view.getHeight());
+
+            try {
+                PixelCopy.request(window, source, bitmap, new PixelCopy.OnPixelCopyFinishedListener() {
+                    @Override
+                    public void onPixelCopyFinished(int copyResult) {
+                        final Bitmap screenshot;
+                        if (copyResult == PixelCopy.SUCCESS) {
+                            screenshot = finish(bitmapPool, bitmap, config, start);
+                        } else {
+                            TurbolinksLog.d("PixelCopy failed: " + copyResult);
+                            screenshot = null;
+                            bitmapPool.release(bitmap);
+                            recordFailure();
+                        }
+
+                        MainThreadDispatcher.getInstance().post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onScreenshot(screenshot);
+                            }
+                        });
+                    }
+                }, handler);
+                return true;
+            } catch (IllegalArgumentException e) {
+                // e.g. the window has no backing surface (yet), draw instead
+                TurbolinksLog.d("PixelCopy not possible: " + e.getMessage());
+            }
+        }
+
+        // A pooled bitmap still holds its previous content
+        bitmap.eraseColor(Color.WHITE);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(width / (float) view.getWidth(), height / (float) view.getHeight());
+        view.draw(canvas);
+        callback.onScreenshot(finish(bitmapPool, bitmap, config, start));
+        return true;
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of screenshots taken.
+     */
+    public synchronized long getCaptureCount() {
+        return captureCount;
+    }
+
+    /**
+     * @return Number of failed captures.
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return Average time in milliseconds from capture request to finished screenshot.
+     */
+    public synchronized long getAverageCaptureMillis() {
+        return captureCount == 0 ? 0 : totalCaptureMillis / captureCount;
+    }
+
+    /**
+     * @return Longest time in milliseconds from capture request to finished screenshot.
+     */
+    public synchronized long getMaxCaptureMillis() {
+        return maxCaptureMillis;
+    }
+
+    /**
+     * @return Size in bytes of the last screenshot.
+     */
+    public synchronized long getLastCaptureBytes() {
+        return lastCaptureBytes;
+    }
+
+    /**
+     * @return Size in bytes of all screenshots taken.
+     */
+    public synchronized long getTotalCaptureBytes() {
+        return totalCaptureBytes;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Converts the captured bitmap to the requested config and records the metrics.</p>
+     */
+    private Bitmap finish(BitmapPool bitmapPool, Bitmap bitmap, Bitmap.Config config, long start) {
+        Bitmap screenshot = bitmap;
+        if (config == Bitmap.Config.HARDWARE) {
+            screenshot = bitmap.copy(Bitmap.Config.HARDWARE, false);
+            bitmapPool.release(bitmap);
+            if (screenshot == null) {
+                recordFailure();
+                return null;
+            }
+        }
+
+        long duration = SystemClock.uptimeMillis() - start;
+        long bytes = (long) screenshot.getWidth() * screenshot.getHeight() * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+        synchronized (this) {
+            captureCount++;
+            totalCaptureMillis += duration;
+            maxCaptureMillis = Math.max(maxCaptureMillis, duration);
+            lastCaptureBytes = bytes;
+            totalCaptureBytes += bytes;
+        }
+
+        TurbolinksLog.d("Screenshot taken in " + duration + " ms, " + bytes + " bytes");
+        return screenshot;
+    }
+
+    private synchronized void recordFailure() {
+        failedCount++;
+    }
+
+    /**
+     * @return The config to capture into, hardware bitmaps can't be written to.
+     */
+    private static Bitmap.Config writableConfig(Bitmap.Config config) {
+        return config == Bitmap.Config.HARDWARE ? Bitmap.Config.ARGB_8888 : config;
+    }
+
+    private static Window windowOf(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return ((Activity) context).getWindow();
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+}
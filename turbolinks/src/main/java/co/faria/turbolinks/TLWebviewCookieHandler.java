@@ -1,10 +1,14 @@
 package co.faria.turbolinks;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.webkit.CookieManager;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
@@ -12,10 +16,47 @@ import okhttp3.HttpUrl;
 
 /**
  * Provides a synchronization point between the webview cookie store and okhttp3.OkHttpClient cookie store
+ *
+ * <p>Parsed cookies can be cached per scheme, host and path with {@link #setCacheTtlMillis}, the
+ * same scope the CookieManager filters cookies by, so repeated requests don't pay a cookie store
+ * round trip each. The cache is off by default: the webView changes cookies on its own, e.g. with
+ * every Turbolinks visit, and a stale session cookie would be sent until the cache expires. A
+ * received cookie may apply to any path or subdomain, so {@link #saveFromResponse} invalidates the
+ * whole cache. Clear it with {@link #clearCache()} whenever the webView may have changed cookies
+ * itself.</p>
+ *
+ * <p>Received cookies are written before the response is handed on, so requests the webView makes
+ * itself see them right away. Only the flush to disk is deferred, and done once per burst.</p>
  */
 
 public class TLWebviewCookieHandler implements CookieJar {
+    static final long DEFAULT_CACHE_TTL_MILLIS = 0;
+    static final int MAX_CACHE_ENTRIES = 128;
+
     private final CookieManager webviewCookieManager = CookieManager.getInstance();
+    private final CookieFlushScheduler flushScheduler = CookieFlushScheduler.getInstance();
+    private final LinkedHashMap<String, CachedCookies> cookieCache = new LinkedHashMap<String, CachedCookies>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCookies> eldest) {
+            return size() > MAX_CACHE_ENTRIES;
+        }
+    };
+    private long cacheTtlMillis = DEFAULT_CACHE_TTL_MILLIS;
+    // Bumped by every invalidation, so a load that read the store before it doesn't cache stale cookies
+    private long cacheGeneration;
+
+    private long hitCount;
+    private long missCount;
+
+    public TLWebviewCookieHandler() {
+    }
+
+    /**
+     * @param context Any Android context, used to flush the cookies when the app goes to the background.
+     */
+    public TLWebviewCookieHandler(Context context) {
+        flushScheduler.registerLifecycle(context);
+    }
 
     @Override
     public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
@@ -24,12 +65,143 @@ public class TLWebviewCookieHandler implements CookieJar {
         for (Cookie cookie : cookies) {
             webviewCookieManager.setCookie(urlString, cookie.toString());
         }
+
+        clearCache();
+        flushScheduler.written(cookies.size());
     }
 
     @Override
     public List<Cookie> loadForRequest(HttpUrl url) {
-        String urlString = url.toString();
-        String cookiesString = webviewCookieManager.getCookie(urlString);
+        String key = cacheKey(url);
+        long now = SystemClock.elapsedRealtime();
+        long generation;
+
+        synchronized (cookieCache) {
+            CachedCookies cached = cookieCache.get(key);
+            if (cached != null && cached.validUntil > now) {
+                hitCount++;
+                return cached.cookies;
+            }
+            missCount++;
+            generation = cacheGeneration;
+        }
+
+        List<Cookie> cookies = parseCookies(url);
+
+        synchronized (cookieCache) {
+            if (generation == cacheGeneration && cacheTtlMillis > 0) {
+                cookieCache.put(key, new CachedCookies(cookies, now + cacheTtlMillis));
+            }
+        }
+        return cookies;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Drops all cached cookies, e.g. after cookies were removed from the CookieManager.</p>
+     */
+    public void clearCache() {
+        synchronized (cookieCache) {
+            cookieCache.clear();
+            cacheGeneration++;
+        }
+    }
+
+    /**
+     * @param cacheTtlMillis Time in milliseconds parsed cookies are reused, 0 (default) disables the
+     *                       cache.
+     */
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        synchronized (cookieCache) {
+            this.cacheTtlMillis = Math.max(cacheTtlMillis, 0);
+            cookieCache.clear();
+            cacheGeneration++;
+        }
+    }
+
+    /**
+     * <p>Flushes the cookie store in the background, e.g. before the process may be killed.</p>
+     */
+    public void flush() {
+        flushScheduler.flushNow();
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of requests served from the cache.
+     */
+    public long getHitCount() {
+        synchronized (cookieCache) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * @return Number of requests that read the cookie store.
+     */
+    public long getMissCount() {
+        synchronized (cookieCache) {
+            return missCount;
+        }
+    }
+
+    /**
+     * @return Share of requests served from the cache, between 0 and 1.
+     */
+    public float getHitRate() {
+        synchronized (cookieCache) {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : hitCount / (float) total;
+        }
+    }
+
+    /**
+     * @return Number of received cookies not yet flushed to disk, across all handlers.
+     */
+    public int getUnflushedCookieCount() {
+        return flushScheduler.getUnflushedCount();
+    }
+
+    /**
+     * @return Highest number of received cookies waiting for a flush at once, across all handlers.
+     */
+    public int getMaxUnflushedCookieCount() {
+        return flushScheduler.getMaxUnflushedCount();
+    }
+
+    /**
+     * @return Number of times the cookie store was flushed.
+     */
+    public long getFlushCount() {
+        return flushScheduler.getFlushCount();
+    }
+
+    /**
+     * @return Average time in milliseconds of a cookie store flush.
+     */
+    public long getAverageFlushMillis() {
+        return flushScheduler.getAverageFlushMillis();
+    }
+
+    /**
+     * @return Longest time in milliseconds of a cookie store flush.
+     */
+    public long getMaxFlushMillis() {
+        return flushScheduler.getMaxFlushMillis();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private List<Cookie> parseCookies(HttpUrl url) {
+        String cookiesString = webviewCookieManager.getCookie(url.toString());
 
         if (cookiesString != null && !cookiesString.isEmpty()) {
             //We can split on the ';' char as the cookie manager only returns cookies
@@ -38,12 +210,29 @@ public class TLWebviewCookieHandler implements CookieJar {
             List<Cookie> cookies = new ArrayList<>(cookieHeaders.length);
 
             for (String header : cookieHeaders) {
-                cookies.add(Cookie.parse(url, header));
+                Cookie cookie = Cookie.parse(url, header.trim());
+                if (cookie != null) {
+                    cookies.add(cookie);
+                }
             }
 
-            return cookies;
+            return Collections.unmodifiableList(cookies);
         }
 
         return Collections.emptyList();
     }
+
+    private static String cacheKey(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port() + url.encodedPath();
+    }
+
+    private static final class CachedCookies {
+        final List<Cookie> cookies;
+        final long validUntil;
+
+        CachedCookies(List<Cookie> cookies, long validUntil) {
+            this.cookies = cookies;
+            this.validUntil = validUntil;
+        }
+    }
 }
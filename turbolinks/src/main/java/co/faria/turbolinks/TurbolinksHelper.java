@@ -5,27 +5,18 @@ import android.content.Context;
 import android.content.MutableContextWrapper;
 import android.os.Handler;
 import android.os.Message;
-import android.text.TextUtils;
-import android.util.Base64;
 import android.view.ViewGroup;
 import android.webkit.WebChromeClient;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.widget.FrameLayout;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 
 
 class TurbolinksHelper {
-    private static final String scriptInjectionFormat =
-            "(function(){var script = document.createElement('script'); script.type = 'text/javascript';script.innerHTML = window.atob('%s');document.head.appendChild(script);return true;})()";
-
     // ---------------------------------------------------
     // Package public
     // ---------------------------------------------------
@@ -64,104 +55,51 @@ class TurbolinksHelper {
     }
 
     /**
-     * <p>Gets the base64-encoded string of a local asset file (typically a Javascript or HTML file)</p>
-     *
-     * @param context  An activity context.
-     * @param filePath Local file path relative to the main/src directory.
-     * @return A base-64 encoded string of the file contents.
-     * @throws IOException Typically if a file cannot be found or read in.
-     */
-    static String getContentFromAssetFile(Context context, String filePath) throws IOException {
-        InputStream inputStream = context.getAssets().open(filePath);
-        byte[] buffer = new byte[inputStream.available()];
-        inputStream.read(buffer);
-        inputStream.close();
-        return Base64.encodeToString(buffer, Base64.NO_WRAP);
-    }
-
-    /**
-     * <p>Injects Javascript into the webView.</p>
+     * <p>Injects Javascript into the webView. The injection script itself is built once per process
+     * by {@link BridgeScriptCache}.</p>
      *
      * @param turbolinksSession The TurbolinksSession.
      * @param context           Any Android context.
-     * @param webView           The shared webView.
      */
-    static void injectTurbolinksBridge(final TurbolinksSession turbolinksSession, Context context, WebView webView) {
+    static void injectTurbolinksBridge(final TurbolinksSession turbolinksSession, Context context) {
         try {
-            String jsCall = String.format(scriptInjectionFormat, TurbolinksHelper.getContentFromAssetFile(context, "js/turbolinks_bridge.js"));
-            runJavascriptRaw(context, webView, jsCall);
+            turbolinksSession.runJavascriptRaw(BridgeScriptCache.getInjectionScript(context));
         } catch (IOException e) {
             TurbolinksLog.e("Error injecting script file into webview: " + e);
         }
     }
 
     /**
-     * <p>JSONifies any arbitrary number of params and runs the the Javascript function in the
-     * webView.</p>
+     * <p>JSONifies any arbitrary number of params and queues the the Javascript function call for
+     * the webView.</p>
      *
-     * @param context      An activity context.
-     * @param webView      The shared webView.
+     * @param queue        The command queue of the shared webView.
      * @param functionName The Javascript function name only (no parenthesis or parameters).
      * @param params       A comma delimited list of parameter values.
      */
-    static void runJavascript(Context context, final WebView webView, String functionName, Object... params) {
-        final String fullJs;
-
-        if (webView != null) {
-            if (params != null) {
-                Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-                for (int i = 0; i < params.length; i++) {
-                    params[i] = gson.toJson(params[i]);
-                }
-
-                fullJs = String.format("javascript: %s(%s);", functionName, TextUtils.join(",", params));
-            } else {
-                fullJs = String.format("javascript: %s();", functionName);
-            }
-
-            runOnMainThread(context, new Runnable() {
-                @Override
-                public void run() {
-                    webView.loadUrl(fullJs);
-                }
-            });
+    static void runJavascript(JavascriptCommandQueue queue, String functionName, Object... params) {
+        if (queue != null) {
+            queue.enqueue(functionName, JavascriptCallSerializer.serializeArguments(params));
         } else {
             TurbolinksLog.e("Error runJavascript with webView = null!");
         }
     }
 
     /**
-     * <p>Runs raw Javascript that's passed in. You are responsible for encoding/escaping the
+     * <p>Queues raw Javascript that's passed in. You are responsible for encoding/escaping the
      * function call.</p>
      *
-     * @param context    An activity context.
-     * @param webView    The shared webView.
+     * @param queue      The command queue of the shared webView.
      * @param javascript The raw Javascript to be executed, fully escaped/encoded in advance.
      */
-    static void runJavascriptRaw(Context context, final WebView webView, final String javascript) {
-        if (webView != null) {
-            runOnMainThread(context, new Runnable() {
-                @Override
-                public void run() {
-                    webView.loadUrl("javascript:" + javascript);
-                }
-            });
+    static void runJavascriptRaw(JavascriptCommandQueue queue, String javascript) {
+        if (queue != null) {
+            queue.enqueueRaw(javascript);
         } else {
             TurbolinksLog.e("Error runJavascriptRaw with webView = null!");
         }
     }
 
-    /**
-     * <p>Executes a given runnable on the main thread.</p>
-     *
-     * @param context  An activity context.
-     * @param runnable A runnable to execute on the main thread.
-     */
-    static void runOnMainThread(Context context, Runnable runnable) {
-        Handler handler = new Handler(context.getMainLooper());
-        handler.post(runnable);
-    }
-
     // ---------------------------------------------------
     // Private
     // ---------------------------------------------------
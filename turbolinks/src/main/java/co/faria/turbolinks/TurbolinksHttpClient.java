@@ -0,0 +1,151 @@
+package co.faria.turbolinks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * <p>Holds the one http client shared by all TurbolinksSessions, so its connection pool, TLS sessions
+ * and dispatcher threads outlive the sessions mounting and unmounting. Sessions derive their own
+ * client from it with {@link OkHttpClient#newBuilder()}, which shares all of these.</p>
+ *
+ * <p>Configure it before the first request. Configuring it later replaces the client: the old one's
+ * idle connections are closed and its dispatcher threads stopped. Clients derived from it earlier
+ * keep working, synchronously and with new connections as needed, until their sessions unmount.</p>
+ */
+public class TurbolinksHttpClient {
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+    static final int DEFAULT_MAX_REQUESTS = 64;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 8;
+
+    private static int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+    private static long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+    private static boolean http2Enabled = true;
+    private static int maxRequests = DEFAULT_MAX_REQUESTS;
+    private static int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    private static final ConnectionReuseListener connectionReuseListener = new ConnectionReuseListener();
+    private static OkHttpClient client;
+
+    private TurbolinksHttpClient() {
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @return The shared client, built on first use.
+     */
+    public static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+            client = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                    .dispatcher(dispatcher)
+                    .protocols(http2Enabled ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1))
+                    .eventListener(connectionReuseListener)
+                    .build();
+        }
+        return client;
+    }
+
+    /**
+     * @param maxIdleConnections Number of idle connections kept open. Default is 5.
+     * @param keepAliveMillis    Time in milliseconds an idle connection is kept open. Default is 5 minutes.
+     */
+    public static synchronized void setConnectionPool(int maxIdleConnections, long keepAliveMillis) {
+        TurbolinksHttpClient.maxIdleConnections = maxIdleConnections;
+        TurbolinksHttpClient.keepAliveMillis = keepAliveMillis;
+        replaceClient();
+    }
+
+    /**
+     * @param http2Enabled False to only speak HTTP/1.1. Default is true.
+     */
+    public static synchronized void setHttp2Enabled(boolean http2Enabled) {
+        TurbolinksHttpClient.http2Enabled = http2Enabled;
+        replaceClient();
+    }
+
+    /**
+     * @param maxRequests        Number of requests executed at once. Default is 64.
+     * @param maxRequestsPerHost Number of requests executed at once per host. Default is 8.
+     */
+    public static synchronized void setDispatcherLimits(int maxRequests, int maxRequestsPerHost) {
+        TurbolinksHttpClient.maxRequests = maxRequests;
+        TurbolinksHttpClient.maxRequestsPerHost = maxRequestsPerHost;
+        replaceClient();
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of calls started, by any session.
+     */
+    public static long getCallCount() {
+        return connectionReuseListener.getCallCount();
+    }
+
+    /**
+     * @return Number of calls that failed.
+     */
+    public static long getFailedCallCount() {
+        return connectionReuseListener.getFailedCallCount();
+    }
+
+    /**
+     * @return Number of connections established.
+     */
+    public static long getNewConnectionCount() {
+        return connectionReuseListener.getNewConnectionCount();
+    }
+
+    /**
+     * @return Number of connections established that speak HTTP/2.
+     */
+    public static long getHttp2ConnectionCount() {
+        return connectionReuseListener.getHttp2ConnectionCount();
+    }
+
+    /**
+     * @return Number of times a call reused a pooled connection.
+     */
+    public static long getReusedConnectionCount() {
+        return connectionReuseListener.getReusedConnectionCount();
+    }
+
+    /**
+     * @return Share of calls' connections that came from the pool, between 0 and 1.
+     */
+    public static float getConnectionReuseRate() {
+        return connectionReuseListener.getReuseRate();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Releases the current client's idle connections and threads, the next {@link #getClient()}
+     * builds a new one with the new configuration.</p>
+     */
+    private static void replaceClient() {
+        if (client == null) return;
+
+        client.connectionPool().evictAll();
+        client.dispatcher().executorService().shutdown();
+        client = null;
+    }
+}
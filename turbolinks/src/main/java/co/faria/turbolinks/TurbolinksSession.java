@@ -10,6 +10,10 @@ import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -28,24 +32,27 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 
 /**
  * <p>The main concrete class to use Turbolinks 5 in your app.</p>
  */
 
 public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback, SwipeRefreshLayout.OnChildScrollUpCallback {
-    // Is client side redirect for turbolink request with wrong referrer enabled?
+    // Is client side redirect for turbolink request with wrong referrer enabled by default?
     static final boolean FIX_TURBOLINK_REFERRER_REDIRECT_CLIENTSIDE = false;
 
     // ---------------------------------------------------
@@ -62,25 +69,47 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     boolean webViewAttachedToNewParent;
     boolean webViewClientAssigned;
     boolean invalidated;
+    boolean documentStartBridgeEnabled;
+    boolean prewarmInProgress; // Cold boot started by prewarm(), not yet attached to a visit
+    boolean replacePrewarmedVisit;
 
     int progressIndicatorDelay;
-    long previousOverrideTime;
+    long visitRequestedAtMillis; // uptime of the last visit(), 0 for cold boots and once its latency is recorded
 
     Activity activity;
     Fragment fragment;
     HashMap<String, Object> javascriptInterfaces = new HashMap<>();
-    HashMap<String, String> restorationIdentifierMap = new HashMap<>();
+    final RestorationIdentifierStore restorationIdentifiers = new RestorationIdentifierStore(RestorationIdentifierStore.DEFAULT_CAPACITY);
+    volatile String restorationKey; // Key of the visiting fragment, taken on the main thread in visit()
     String location;
     String redirectLocation;
     String currentVisitIdentifier;
+    String prewarmLocation;
+    PrewarmReport prewarmReport;
+    ProgressDelayPolicy progressDelayPolicy;
+    ScreenshotDiskCache screenshotDiskCache;
     TurbolinksAdapter turbolinksAdapter;
     TurbolinksView turbolinksView;
     View progressView;
     View progressIndicator;
 
-    TurbolinksJSExecutionResultCallback executionResultCallback;
+    final PendingJavascriptCalls pendingJavascriptCalls = new PendingJavascriptCalls();
+    final HashMap<String, String> registeredScripts = new HashMap<>();
+    final HashSet<String> registeredScriptsInPage = new HashSet<>();
+    long scriptRegistrationGeneration; // Bumped whenever registeredScriptsInPage is invalidated, guarded by registeredScripts
+    Set<String> documentStartBridgeOrigins = Collections.singleton("*");
+    ScriptHandler documentStartScriptHandler;
+    JavascriptCommandQueue javascriptQueue;
+    BridgeTransport bridgeTransport = BridgeTransport.JAVASCRIPT_INTERFACE;
+    final WebMessageBridge webMessageBridge = new WebMessageBridge(this);
+    final BridgeLatencyProbe bridgeLatencyProbe = new BridgeLatencyProbe();
+    final VisitTimelineRecorder visitTimelineRecorder = new VisitTimelineRecorder(VisitTimelineRecorder.DEFAULT_CAPACITY);
+    final VisitCancellationTracker visitCancellationTracker = new VisitCancellationTracker();
+    final NavigationDeduplicator navigationDeduplicator = new NavigationDeduplicator();
 
     static volatile TurbolinksSession defaultInstance;
+    static volatile CacheRetentionPolicy defaultCacheRetentionPolicy = CacheRetentionPolicy.CLEAR_ALL;
+    CacheRetentionPolicy cacheRetentionPolicy;
 
     // ---------------------------------------------------
     // Final vars
@@ -93,8 +122,13 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     static final int PROGRESS_INDICATOR_DELAY = 250;
 
     final Context applicationContext;
+    final MainThreadDispatcher mainThreadDispatcher = MainThreadDispatcher.getInstance();
     public WebView webView;
     public OkHttpClient client;
+    TLWebviewCookieHandler cookieHandler;
+    RequestInterceptor requestInterceptor;
+    volatile boolean referrerRedirectFixEnabled = FIX_TURBOLINK_REFERRER_REDIRECT_CLIENTSIDE;
+    volatile FingerprintedAssetCache assetCache;
 
     // ---------------------------------------------------
     // Constructor
@@ -114,6 +148,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         this.screenshotsEnabled = true;
         this.pullToRefreshEnabled = true;
         this.webViewAttachedToNewParent = false;
+        this.cacheRetentionPolicy = defaultCacheRetentionPolicy;
 
         this.initWebView();
     }
@@ -122,6 +157,13 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         return currentVisitIdentifier;
     }
 
+    /**
+     * @return The location of the last visit, null before the first one.
+     */
+    public String getLocation() {
+        return location;
+    }
+
     public void initWebView() {
         if (this.webView != null) {
             this.unmountWebClient();
@@ -132,40 +174,66 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
     public void setInitPageLoading(Boolean value) {
         this.initPageLoading = value;
+
+        // The document start bridge would otherwise still be installed on the init page
+        if (initPageLoading) {
+            removeDocumentStartBridge();
+        } else {
+            installDocumentStartBridge();
+        }
     }
 
     public void mountWebClient() {
         if (!this.webViewClientAssigned) {
             webViewClientAssigned = true;
 
-            if (FIX_TURBOLINK_REFERRER_REDIRECT_CLIENTSIDE) {
-                client = new OkHttpClient.Builder()
-                        .followRedirects(false)
-                        .followSslRedirects(false)
-                        .cookieJar(new TLWebviewCookieHandler()).build();
-            }
-
             resetToColdBoot();
 
             this.webView = TurbolinksHelper.createWebView(applicationContext);
             this.webView.addJavascriptInterface(this, JAVASCRIPT_INTERFACE_NAME);
-            this.webView.clearCache(true);
+            cacheRetentionPolicy.apply(applicationContext, webView);
+            this.javascriptQueue = new JavascriptCommandQueue(webView);
+            installDocumentStartBridge();
 
             this.webView.setWebViewClient(new WebViewClient() {
                 @Override
                 public void onPageStarted(WebView view, String url, Bitmap favicon) {
                     coldBootInProgress = true;
                     bridgeInjectionInProgress = false;
+                    visitTimelineRecorder.mark(VisitTimeline.Phase.PAGE_STARTED);
+
+                    // The port and the compiled scripts belonged to the previous page
+                    webMessageBridge.disconnect();
+                    bridgeLatencyProbe.clear();
+                    synchronized (registeredScripts) {
+                        registeredScriptsInPage.clear();
+                        scriptRegistrationGeneration++;
+                    }
                 }
 
                 @Override
                 public void onPageFinished(WebView view, final String location) {
                     if (!location.equals("about:blank")) {
                         Log.d("TurbolinksSession", "onPageFinished (WebClient): " + location);
+                        visitTimelineRecorder.mark(VisitTimeline.Phase.PAGE_FINISHED);
+
+                        // The page may have set cookies the okhttp client hasn't seen
+                        if (cookieHandler != null) {
+                            cookieHandler.clearCache();
+                        }
 
                         if (initPageLoading) {
                             // don't inject JS on initPageLoading
                             turbolinksAdapter.onPageFinished();
+                        } else if (documentStartScriptHandler != null) {
+                            // bridge was installed at document start, no probe or injection needed.
+                            // setTurbolinksIsReady may already have arrived before onPageStarted.
+                            if (turbolinksIsReady) {
+                                coldBootInProgress = false;
+                            }
+                            if (turbolinksAdapter != null) { // no adapter while prewarming
+                                turbolinksAdapter.onPageFinished();
+                            }
                         } else {
                             String jsCall = "window.webView == null";
                             webView.evaluateJavascript(jsCall, new ValueCallback<String>() {
@@ -173,13 +241,15 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                                 public void onReceiveValue(String s) {
                                     if (Boolean.parseBoolean(s) && !bridgeInjectionInProgress) {
                                         bridgeInjectionInProgress = true;
-                                        TurbolinksHelper.injectTurbolinksBridge(TurbolinksSession.this, applicationContext, webView);
+                                        TurbolinksHelper.injectTurbolinksBridge(TurbolinksSession.this, applicationContext);
                                         TurbolinksLog.d("Bridge injected");
+                                        visitTimelineRecorder.mark(VisitTimeline.Phase.BRIDGE_INJECTED);
 
-                                        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+                                        mainThreadDispatcher.post(new Runnable() {
                                             @Override
                                             public void run() {
-                                                if (webView != null) { // make sure webView is available
+                                                // make sure webView is available, no adapter while prewarming
+                                                if (webView != null && turbolinksAdapter != null) {
                                                     turbolinksAdapter.onPageFinished();
                                                 }
                                             }
@@ -203,7 +273,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                 public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
                     String location = request.getUrl().toString();
 
-                    if (request.isRedirect()) {
+                    if (request.isRedirect() && turbolinksAdapter != null) {
                         if (turbolinksAdapter.requestRedirect(location)) {
                             hideProgressView(currentVisitIdentifier);
                             return false;
@@ -214,17 +284,9 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                         return true;
                     }
 
-                    /**
-                     * Prevents firing twice in a row within a few milliseconds of each other, which
-                     * happens. So we check for a slight delay between requests, which is plenty of time
-                     * to allow for a user to click the same link again.
-                     */
-                    long currentOverrideTime = new Date().getTime();
-                    if ((currentOverrideTime - previousOverrideTime) > 500) {
-                        previousOverrideTime = currentOverrideTime;
-                        TurbolinksLog.d("Overriding load: " + location);
-                        visitProposedToLocationWithAction(location, ACTION_ADVANCE);
-                    }
+                    // Firing twice in a row for the same location is suppressed by the navigationDeduplicator
+                    TurbolinksLog.d("Overriding load: " + location);
+                    visitProposedToLocationWithAction(location, ACTION_ADVANCE);
 
                     return true;
                 }
@@ -237,8 +299,16 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
                 @Override
                 public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                    FingerprintedAssetCache assetCache = TurbolinksSession.this.assetCache;
+                    if (assetCache != null) {
+                        WebResourceResponse asset = assetCache.intercept(request);
+                        if (asset != null) {
+                            return asset;
+                        }
+                    }
+
                     // do we have a page request with differing Turbolinks-Referrer?
-                    if (FIX_TURBOLINK_REFERRER_REDIRECT_CLIENTSIDE && (request.getUrl().toString().equals(location)) &&
+                    if (referrerRedirectFixEnabled && (request.getUrl().toString().equals(location)) &&
                             request.getMethod().equals("GET") &&
                             request.getRequestHeaders().containsKey("Referer") &&
                             request.getUrl().toString().equals(request.getRequestHeaders().get("Referer")) &&
@@ -258,24 +328,17 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                         builder.addHeader("x-requested-with", applicationContext.getPackageName());
                         builder.addHeader("accept-language", Locale.getDefault().toLanguageTag() + ";" + Locale.getDefault().getLanguage());
 
-                        Request newRequest = builder.build();
-                        Response response = null;
-                        try {
-                            response = client.newCall(newRequest).execute();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            return super.shouldInterceptRequest(view, request);
-                        }
-                        // Redirect detected => assign redirectLocation to ignore subsequent invalidate page reset.
-                        if (response.isRedirect() && (response.header("location") != null)) {
-                            location = response.header("location");
-                            redirectLocation = location;
+                        WebResourceResponse response = ensureRequestInterceptor().intercept(builder.build(), new RequestInterceptor.RedirectHandler() {
+                            @Override
+                            public void onRedirect(String redirect) {
+                                // Redirect detected => assign redirectLocation to ignore subsequent invalidate page reset.
+                                location = redirect;
+                                redirectLocation = redirect;
+                            }
+                        });
+                        if (response != null) {
+                            return response;
                         }
-
-                        InputStream responseInputStream = response.body().byteStream();
-                        String contentTypeValue = response.body().contentType().type();
-                        String encodingValue = response.body().contentType().charset().toString();
-                        return new WebResourceResponse(contentTypeValue, encodingValue, responseInputStream);
                     }
                     return super.shouldInterceptRequest(view, request);
                 }
@@ -286,7 +349,9 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
                     if (request.isForMainFrame()) {
                         resetToColdBoot();
-                        turbolinksAdapter.onReceivedError(error.getDescription().toString(), error.getErrorCode());
+                        if (turbolinksAdapter != null) {
+                            turbolinksAdapter.onReceivedError(error.getDescription().toString(), error.getErrorCode());
+                        }
                     }
                     TurbolinksLog.d("onReceivedError: Code: " + error.getErrorCode() + " onRequest: " + request.getUrl().toString());
                 }
@@ -299,7 +364,9 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                     // if error is not for MainFrame -> fail silently
                     if (request.isForMainFrame()) {
                         resetToColdBoot();
-                        turbolinksAdapter.onReceivedHttpError(errorResponse.getReasonPhrase(), errorResponse.getStatusCode());
+                        if (turbolinksAdapter != null) {
+                            turbolinksAdapter.onReceivedHttpError(errorResponse.getReasonPhrase(), errorResponse.getStatusCode());
+                        }
                     }
                     TurbolinksLog.d("onReceivedHttpError: " + errorResponse.getStatusCode() + " onRequest: " + request.getUrl().toString());
                 }
@@ -310,6 +377,8 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     public void unmountWebClient() {
         webViewClientAssigned = false;
 
+        webMessageBridge.disconnect();
+        javascriptQueue.release();
         clearWebView();
 
         webView.setWebViewClient(null);
@@ -317,7 +386,12 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         webView.setOnScrollChangeListener(null);
 
         webView = null;
-        client = null;
+        javascriptQueue = null;
+        synchronized (this) {
+            client = null;
+            requestInterceptor = null;
+        }
+        documentStartScriptHandler = null;
     }
 
     // ---------------------------------------------------
@@ -339,9 +413,9 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     public void clearWebView() {
         webView.clearHistory();
 
-        // NOTE: clears RAM cache, if you pass true, it will also clear the disk cache.
-        // Probably not a great idea to pass true if you have other WebViews still alive.
-        webView.clearCache(true);
+        // NOTE: clearing the disk cache is probably not a great idea if you have other WebViews still
+        // alive, the cache retention policy decides.
+        cacheRetentionPolicy.apply(applicationContext, webView);
 
         try {
             // Loading a blank page is optional, but will ensure that the WebView isn't doing anything when you destroy it.
@@ -362,6 +436,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         activity = null;
         fragment = null;
         turbolinksView = null;
+        pendingJavascriptCalls.cancelAll("Cancelled by cleanReferences");
     }
 
     /**
@@ -376,6 +451,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
             synchronized (TurbolinksSession.class) {
                 if (defaultInstance == null) {
                     TurbolinksLog.d("Default instance is null, creating new");
+                    BridgeScriptCache.warmUp(context);
                     defaultInstance = TurbolinksSession.getNew(context);
                 }
             }
@@ -384,6 +460,36 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         return defaultInstance;
     }
 
+    /**
+     * <p>Prepares the default TurbolinksSession ahead of its first visit. Once the main thread is
+     * idle, the session and its webView are created and a cold boot of the given location is started
+     * into the still detached webView.</p>
+     *
+     * <p>The first visit() to the same location then attaches to the prewarmed cold boot instead of
+     * starting a new one. Any other location cold boots as usual. See {@link #getPrewarmReport()} for
+     * the timings.</p>
+     *
+     * @param context Any Android context.
+     * @param url     The location the first visit is expected to go to.
+     */
+    public static void prewarm(Context context, final String url) {
+        final Context applicationContext = context.getApplicationContext();
+        final long requestedAt = SystemClock.elapsedRealtime();
+
+        Looper.getMainLooper().getQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                PrewarmReport report = new PrewarmReport(url, requestedAt);
+                report.markStarted();
+
+                TurbolinksSession session = getDefault(applicationContext);
+                report.markWebViewCreated();
+                session.startPrewarm(report);
+                return false;
+            }
+        });
+    }
+
     /**
      * Resets the default TurbolinksSession instance to null in case you want a fresh session.
      */
@@ -400,6 +506,21 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         TurbolinksLog.setDebugLoggingEnabled(enabled);
     }
 
+    /**
+     * <p>Sets the cache retention policy of sessions created from now on. The constructor already
+     * mounts a webView, so this must be called before {@link #getDefault(Context)} or
+     * {@link #getNew(Context)} to apply to the first one. Default is
+     * {@link CacheRetentionPolicy#CLEAR_ALL}.</p>
+     *
+     * @param policy The policy for new sessions.
+     */
+    public static void setDefaultCacheRetentionPolicy(CacheRetentionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("CacheRetentionPolicy must not be null.");
+        }
+        defaultCacheRetentionPolicy = policy;
+    }
+
     // ---------------------------------------------------
     // Required chained methods
     // ---------------------------------------------------
@@ -416,6 +537,8 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
      * @return The TurbolinksSession to continue the chained calls.
      */
     public TurbolinksSession activity(Activity activity) {
+        ensureWebView();
+
         if (activity != this.activity) {
             // reassign webView
             //if (this.activity != null) {
@@ -487,6 +610,8 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
      * @return The TurbolinksSession to continue the chained calls.
      */
     public TurbolinksSession view(TurbolinksView turbolinksView) {
+        ensureWebView();
+
         if (this.turbolinksView != null) {
             this.turbolinksView.setOnScrollChangeListener(null);
         }
@@ -495,6 +620,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
             this.turbolinksView = turbolinksView;
 
             if (turbolinksView != null) {
+                this.turbolinksView.setScreenshotDiskCache(screenshotDiskCache);
                 this.webViewAttachedToNewParent = this.turbolinksView.attachWebView(webView, screenshotsEnabled, pullToRefreshEnabled);
                 this.turbolinksView.getRefreshLayout().setOnChildScrollUpCallback(this);
                 this.turbolinksView.getRefreshLayout().setSizeCallback(this);
@@ -523,23 +649,43 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
      */
     public void visit(String location) {
         TurbolinksLog.d("visit called: " + location);
+        ensureWebView();
         this.invalidated = false;
+        this.restorationKey = fragment != null ? RestorationIdentifierStore.keyOf(fragment) : null;
         this.location = location;
         this.redirectLocation = "";
 
         validateRequiredParams();
 
+        boolean attachToPrewarm = consumePrewarm(location);
+        // Cold boots load the whole page, their latency says nothing about the route's visits
+        visitRequestedAtMillis = turbolinksIsReady ? SystemClock.uptimeMillis() : 0;
+
+        // Before a cold boot the bridge isn't usable, the stopped visit is only forgotten then
+        cancelInFlightVisit();
+        visitTimelineRecorder.startVisit(location);
         turbolinksAdapter.visitStarted(location);
 
+        turbolinksView.setLocation(location);
+        if (!turbolinksIsReady) {
+            // Covers the blank webView during the cold boot, if a screenshot of an earlier run exists
+            turbolinksView.showCachedScreenshot(location);
+        }
+
         if (!turbolinksIsReady || webViewAttachedToNewParent) {
             initProgressView();
         }
 
         if (turbolinksIsReady) {
             visitCurrentLocationWithTurbolinks();
+        } else if (attachToPrewarm && prewarmInProgress) {
+            // setTurbolinksIsReady visits once the prewarmed cold boot is done
+            TurbolinksLog.d("Attaching to prewarmed cold boot: " + location);
+            visitTimelineRecorder.mark(VisitTimeline.Phase.COLD_BOOT_STARTED);
         } else {
             webView.stopLoading();
             TurbolinksLog.d("Cold booting: " + location);
+            visitTimelineRecorder.mark(VisitTimeline.Phase.COLD_BOOT_STARTED);
             webView.loadUrl(location);
         }
 
@@ -608,10 +754,13 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         TurbolinksLog.d("visitProposedToLocationWithAction called");
 
         if (location != null) {
-            TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+            final String proposedAction = action != null ? action : ACTION_ADVANCE;
+            if (!navigationDeduplicator.shouldNavigate(location, proposedAction)) return;
+
+            mainThreadDispatcher.post(new Runnable() {
                 @Override
                 public void run() {
-                    turbolinksAdapter.visitProposedToLocationWithAction(location, action != null ? action : ACTION_ADVANCE);
+                    turbolinksAdapter.visitProposedToLocationWithAction(location, proposedAction);
                 }
             });
         } else {
@@ -633,7 +782,14 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     public void visitStarted(String visitIdentifier, boolean visitHasCachedSnapshot) {
         TurbolinksLog.d("visitStarted called");
 
+        // Proposal, render and progress callbacks still pending for the previous visit are superseded.
+        // Its completion callbacks are in their own group and still run.
+        if (!TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
+            mainThreadDispatcher.cancel(currentVisitIdentifier);
+        }
         currentVisitIdentifier = visitIdentifier;
+        visitCancellationTracker.visitStarted(visitIdentifier);
+        visitTimelineRecorder.visitStarted(visitIdentifier);
 
         runJavascript("webView.changeHistoryForVisitWithIdentifier", visitIdentifier);
         runJavascript("webView.issueRequestForVisitWithIdentifier", visitIdentifier);
@@ -653,6 +809,8 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @android.webkit.JavascriptInterface
     public void visitRequestCompleted(String visitIdentifier) {
         TurbolinksLog.d("visitRequestCompleted called");
+        if (dropCancelledVisitEvent(visitIdentifier, "visitRequestCompleted")) return;
+        visitTimelineRecorder.mark(visitIdentifier, VisitTimeline.Phase.REQUEST_COMPLETED);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
             runJavascript("webView.loadResponseForVisitWithIdentifier", visitIdentifier);
@@ -672,13 +830,18 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @android.webkit.JavascriptInterface
     public void visitRequestFailedWithStatusCode(final String visitIdentifier, final int statusCode) {
         TurbolinksLog.d("visitRequestFailedWithStatusCode called");
+        if (dropCancelledVisitEvent(visitIdentifier, "visitRequestFailedWithStatusCode")) return;
+        visitCancellationTracker.visitFinished(visitIdentifier);
+        visitTimelineRecorder.mark(visitIdentifier, VisitTimeline.Phase.REQUEST_FAILED);
         hideProgressView(visitIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+            mainThreadDispatcher.runCoalesced(finishedGroup(visitIdentifier), "visitRequestFailed", new Runnable() {
                 @Override
                 public void run() {
-                    turbolinksAdapter.requestFailedWithStatusCode(statusCode);
+                    if (turbolinksAdapter != null) { // no adapter while prewarming
+                        turbolinksAdapter.requestFailedWithStatusCode(statusCode);
+                    }
                 }
             });
         }
@@ -698,7 +861,13 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitRendered(final String visitIdentifier) {
-        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+        if (dropCancelledVisitEvent(visitIdentifier, "visitRendered")) return;
+        visitTimelineRecorder.mark(visitIdentifier, VisitTimeline.Phase.RENDERED);
+        if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
+            // The first render hides the progress indicator, which is what its delay follows
+            recordVisitLatency();
+        }
+        mainThreadDispatcher.runCoalesced(visitIdentifier, "visitRendered", new Runnable() {
             @Override
             public void run() {
                 turbolinksAdapter.webViewRendered(new Runnable() {
@@ -727,15 +896,25 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @android.webkit.JavascriptInterface
     public void visitCompleted(final String visitIdentifier, String restorationIdentifier) {
         TurbolinksLog.d("visitCompleted called");
+        if (dropCancelledVisitEvent(visitIdentifier, "visitCompleted")) return;
+        visitCancellationTracker.visitFinished(visitIdentifier);
+        visitTimelineRecorder.mark(visitIdentifier, VisitTimeline.Phase.COMPLETED);
+
+        // The visit's XHR may have changed cookies, e.g. rotated the session
+        TLWebviewCookieHandler cookieHandler = this.cookieHandler;
+        if (cookieHandler != null) {
+            cookieHandler.clearCache();
+        }
+
         if (this.invalidated) {
             TurbolinksLog.d("VISIT was invalidated -> skip completed");
             return;
         }
 
-        addRestorationIdentifierToMap(restorationIdentifier);
+        addRestorationIdentifier(restorationIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+            mainThreadDispatcher.runCoalesced(finishedGroup(visitIdentifier), "visitCompleted", new Runnable() {
                 @Override
                 public void run() {
                     turbolinksAdapter.visitCompleted(visitIdentifier);
@@ -758,6 +937,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @android.webkit.JavascriptInterface
     public void pageInvalidated() {
         TurbolinksLog.d("pageInvalidated called");
+        visitTimelineRecorder.mark(VisitTimeline.Phase.PAGE_INVALIDATED);
         this.invalidated = true;
 
         // in case we have a pending redirect request, this is called also
@@ -766,7 +946,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
             resetToColdBoot();
         }
 
-        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+        mainThreadDispatcher.run(new Runnable() {
             @Override
             public void run() { // route through normal chain so progress view is shown, regular logging, etc.
                 turbolinksAdapter.pageInvalidated();
@@ -790,7 +970,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void hideProgressView(final String visitIdentifier) {
-        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+        mainThreadDispatcher.runCoalesced(visitIdentifier, "hideProgressView", new Runnable() {
             @Override
             public void run() {
                 /**
@@ -801,6 +981,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
                 if (turbolinksIsReady && (turbolinksView != null) && TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
                     TurbolinksLog.d("Hiding progress view for visitIdentifier: " + visitIdentifier + ", currentVisitIdentifier: " + currentVisitIdentifier);
                     turbolinksView.hideProgress();
+                    visitTimelineRecorder.mark(visitIdentifier, VisitTimeline.Phase.PROGRESS_HIDDEN);
                     turbolinksView.hideScreenshot();
                 }
             }
@@ -824,10 +1005,19 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
         if (turbolinksIsReady) {
             bridgeInjectionInProgress = false;
+            prewarmInProgress = false;
+            visitTimelineRecorder.mark(VisitTimeline.Phase.TURBOLINKS_READY);
+            if (prewarmReport != null) {
+                prewarmReport.markTurbolinksReady();
+            }
 
-            TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+            mainThreadDispatcher.run(new Runnable() {
                 @Override
                 public void run() {
+                    if (bridgeTransport == BridgeTransport.WEB_MESSAGE_PORT && webView != null) {
+                        webMessageBridge.connect(webView);
+                    }
+
                     if (fragment != null) {
                         TurbolinksLog.d("TurbolinksSession is ready");
                         visitCurrentLocationWithTurbolinks();
@@ -853,7 +1043,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void turbolinksDoesNotExist() {
-        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+        mainThreadDispatcher.run(new Runnable() {
             @Override
             public void run() {
                 TurbolinksLog.d("Error instantiating turbolinks_bridge.js - resetting to cold boot.");
@@ -867,20 +1057,36 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
 
     /**
-     * Execute javascript result callback. </p>
+     * <p><b>JavascriptInterface only</b> Passes the result of a
+     * {@link #runJavascriptWithResultAfterFrameRequested} call back to its callback.</p>
+     *
+     * @param callIdentifier The identifier of the pending call.
+     * @param result         The script result.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void executeResultCallback(String callIdentifier, String result) {
+        pendingJavascriptCalls.complete(callIdentifier, result);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Answers a ping sent by the {@link BridgeLatencyProbe}.</p>
+     *
+     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
+     * purposes, you should never call this directly.</p>
+     *
+     * @param identifier The ping identifier.
      */
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
-    public void executeResultCallback(String result) {
-        if (executionResultCallback != null) {
-            TurbolinksJSExecutionResultCallback currentCallback = executionResultCallback;
-            executionResultCallback = null;
-            if (result.startsWith("\"JSError:")) {
-                currentCallback.executed(false, null, new Error(result.replaceFirst("\"JSError:", "")));
-            } else {
-                currentCallback.executed(true, result, null);
+    public void pong(final String identifier) {
+        // Recorded on the main thread, where WebMessagePort messages arrive as well
+        mainThreadDispatcher.run(new Runnable() {
+            @Override
+            public void run() {
+                bridgeLatencyProbe.pong(identifier);
             }
-        }
+        });
     }
 
     // -----------------------------------------------------------------------
@@ -933,6 +1139,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
      * @return The WebView used by Turbolinks.
      */
     public WebView getWebView() {
+        ensureWebView();
         return webView;
     }
 
@@ -961,25 +1168,37 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         bridgeInjectionInProgress = false;
         turbolinksIsReady = false;
         coldBootInProgress = false;
+        prewarmInProgress = false;
     }
 
     /**
-     * <p>Runs a Javascript function with any number of arbitrary params in the Turbolinks webView.</p>
+     * <p>Runs a Javascript function with any number of arbitrary params in the Turbolinks webView.
+     * Calls issued within the same frame are sent to the webView together, in order.</p>
      *
      * @param functionName The name of the function, without any parenthesis or params
      * @param params       A comma delimited list of params. Params will be automatically JSONified.
      */
     public void runJavascript(final String functionName, final Object... params) {
-        TurbolinksHelper.runJavascript(applicationContext, webView, functionName, params);
+        TurbolinksHelper.runJavascript(javascriptQueue, functionName, params);
     }
 
     /**
-     * <p>Runs raw Javascript in webView. Simply wraps the loadUrl("javascript: methodName()") call.</p>
+     * <p>Runs raw Javascript in webView. Queued together with {@link #runJavascript}, so ordering
+     * between both is preserved.</p>
      *
      * @param rawJavascript The full Javascript string that will be executed by the WebView.
      */
     public void runJavascriptRaw(String rawJavascript) {
-        TurbolinksHelper.runJavascriptRaw(applicationContext, webView, rawJavascript);
+        TurbolinksHelper.runJavascriptRaw(javascriptQueue, rawJavascript);
+    }
+
+    /**
+     * <p>Returns the queue that coalesces native to Javascript calls, e.g. to read its counters.</p>
+     *
+     * @return The command queue of the current webView, null while unmounted.
+     */
+    public JavascriptCommandQueue getJavascriptCommandQueue() {
+        return javascriptQueue;
     }
 
     /**
@@ -1002,6 +1221,223 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         pullToRefreshEnabled = enabled;
     }
 
+    /**
+     * <p>Installs the Turbolinks bridge at document start instead of injecting it from
+     * onPageFinished, which saves the "window.webView == null" probe and the injection round trip
+     * on every cold boot. On WebView versions without document start script support the
+     * onPageFinished injection is kept as fallback.</p>
+     *
+     * @param enabled        If true the bridge is installed at document start.
+     * @param allowedOrigins Origin rules the bridge is installed for (e.g. "https://example.com"),
+     *                       null allows all origins.
+     * @return True if document start injection is active for the current webView.
+     */
+    public boolean setDocumentStartBridgeEnabled(boolean enabled, @Nullable Set<String> allowedOrigins) {
+        removeDocumentStartBridge();
+
+        this.documentStartBridgeEnabled = enabled;
+        this.documentStartBridgeOrigins = allowedOrigins != null ? allowedOrigins : Collections.singleton("*");
+
+        installDocumentStartBridge();
+        return documentStartScriptHandler != null;
+    }
+
+    /**
+     * <p>Selects how the bridge and the native side talk to each other. Takes effect the next time
+     * Turbolinks becomes ready, i.e. with the next cold boot. Default is
+     * {@link BridgeTransport#JAVASCRIPT_INTERFACE}.</p>
+     *
+     * @param transport The transport to use.
+     */
+    public void setBridgeTransport(BridgeTransport transport) {
+        this.bridgeTransport = transport;
+    }
+
+    /**
+     * <p>Sets what happens to the webView's HTTP cache in {@link #mountWebClient()} and
+     * {@link #clearWebView()} from now on.</p>
+     *
+     * @param policy The cache retention policy.
+     */
+    public void setCacheRetentionPolicy(CacheRetentionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("CacheRetentionPolicy must not be null.");
+        }
+        this.cacheRetentionPolicy = policy;
+    }
+
+    /**
+     * <p>Saves the restoration identifiers of the visited fragments, so scroll positions can still
+     * be restored after the process was recreated. Call from the activity's
+     * onSaveInstanceState.</p>
+     *
+     * @param outState The activity's state bundle.
+     */
+    public void onSaveInstanceState(Bundle outState) {
+        restorationIdentifiers.saveTo(outState);
+    }
+
+    /**
+     * <p>Restores the restoration identifiers saved by {@link #onSaveInstanceState(Bundle)}.</p>
+     *
+     * @param savedInstanceState The activity's saved state bundle, may be null.
+     */
+    public void onRestoreInstanceState(@Nullable Bundle savedInstanceState) {
+        if (savedInstanceState != null) {
+            restorationIdentifiers.restoreFrom(savedInstanceState);
+        }
+    }
+
+    /**
+     * <p>Enables an adaptive progress indicator delay, learned from the latency of earlier visits to
+     * the same route. Without a policy, the indicator is delayed by 250 ms over a screenshot and
+     * shown right away otherwise.</p>
+     *
+     * @param policy The policy, null to disable.
+     */
+    public void setProgressDelayPolicy(@Nullable ProgressDelayPolicy policy) {
+        this.progressDelayPolicy = policy;
+    }
+
+    /**
+     * <p>Enables the disk cache for screenshots. Screenshots taken when the webView moves to a new
+     * view are stored per location, and shown during a cold boot of the same location, e.g. after
+     * the process was killed in the background.</p>
+     *
+     * @param cache The cache, null to disable.
+     */
+    public void setScreenshotDiskCache(@Nullable ScreenshotDiskCache cache) {
+        this.screenshotDiskCache = cache;
+        if (turbolinksView != null) {
+            turbolinksView.setScreenshotDiskCache(cache);
+        }
+    }
+
+    /**
+     * <p>Enables the disk cache for fingerprinted assets. Matching requests are served from disk
+     * without touching the network, misses are loaded and stored.</p>
+     *
+     * @param cache The cache, null to disable.
+     */
+    public void setAssetCache(@Nullable FingerprintedAssetCache cache) {
+        this.assetCache = cache;
+    }
+
+    /**
+     * @return The asset cache, null if disabled.
+     */
+    public FingerprintedAssetCache getAssetCache() {
+        return assetCache;
+    }
+
+    /**
+     * <p>Sets the window within which a second proposal of the same location and action is
+     * suppressed as a duplicate. Default is 500 ms.</p>
+     *
+     * @param windowMillis The window in milliseconds, 0 to disable de-duplication.
+     */
+    public void setNavigationDeduplicationWindow(long windowMillis) {
+        navigationDeduplicator.setWindowMillis(windowMillis);
+    }
+
+    /**
+     * @return Number of visit proposals suppressed as duplicates.
+     */
+    public long getSuppressedNavigationCount() {
+        return navigationDeduplicator.getSuppressedCount();
+    }
+
+    /**
+     * @return The cache retention policy of this session.
+     */
+    public CacheRetentionPolicy getCacheRetentionPolicy() {
+        return cacheRetentionPolicy;
+    }
+
+    /**
+     * <p>Returns the transport currently in use. {@link BridgeTransport#WEB_MESSAGE_PORT} is only
+     * reported once the bridge has confirmed the port connection.</p>
+     *
+     * @return The active transport.
+     */
+    public BridgeTransport getActiveBridgeTransport() {
+        return webMessageBridge.isConnected() ? BridgeTransport.WEB_MESSAGE_PORT : BridgeTransport.JAVASCRIPT_INTERFACE;
+    }
+
+    /**
+     * <p>Returns the table of in-flight {@link #runJavascriptWithResultAfterFrameRequested} calls,
+     * e.g. to read its counters.</p>
+     *
+     * @return The pending Javascript calls of this session.
+     */
+    public PendingJavascriptCalls getPendingJavascriptCalls() {
+        return pendingJavascriptCalls;
+    }
+
+    /**
+     * <p>Returns the recorder of per-visit phase timestamps. Register a
+     * {@link VisitTimelineListener} on it to receive each finished visit.</p>
+     *
+     * @return The visit timeline recorder of this session.
+     */
+    public VisitTimelineRecorder getVisitTimelineRecorder() {
+        return visitTimelineRecorder;
+    }
+
+    /**
+     * @return The timings of the last {@link #prewarm(Context, String)} of this session, null if it
+     * wasn't prewarmed.
+     */
+    public PrewarmReport getPrewarmReport() {
+        return prewarmReport;
+    }
+
+    /**
+     * @return Number of visits cancelled or superseded by a newer visit before they finished.
+     */
+    public long getCancelledVisitCount() {
+        return visitCancellationTracker.getCancelledCount();
+    }
+
+    /**
+     * <p>Loads page requests whose Referer differs from their Turbolinks-Referrer with the okhttp
+     * client, with the correct Referer. Only these requests go through the client; everything else
+     * is loaded by the webView. Disabled by default.</p>
+     *
+     * @param enabled True to enable the client side referrer fix.
+     */
+    public void setReferrerRedirectFixEnabled(boolean enabled) {
+        this.referrerRedirectFixEnabled = enabled;
+    }
+
+    /**
+     * <p>Returns the cookie jar of {@link #client}, e.g. to read its cache hit rate or clear its
+     * cache after removing cookies.</p>
+     *
+     * @return The cookie handler, null until a request went through the client.
+     */
+    public TLWebviewCookieHandler getCookieHandler() {
+        return cookieHandler;
+    }
+
+    /**
+     * <p>Returns the engine executing intercepted requests, e.g. to read its latency metrics.</p>
+     *
+     * @return The request interceptor, null until a request was intercepted.
+     */
+    public RequestInterceptor getRequestInterceptor() {
+        return requestInterceptor;
+    }
+
+    /**
+     * <p>Returns the probe to measure bridge round trip latency, e.g. to compare transports.</p>
+     *
+     * @return The latency probe of this session.
+     */
+    public BridgeLatencyProbe getBridgeLatencyProbe() {
+        return bridgeLatencyProbe;
+    }
+
     /**
      * <p>Provides the status of whether Turbolinks is initialized and ready for use.</p>
      *
@@ -1019,13 +1455,91 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
      */
     public void visitLocationWithAction(String location, String action) {
         this.location = location;
-        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", TurbolinksHelper.encodeUrl(location), action, getRestorationIdentifierFromMap());
+        cancelInFlightVisit();
+        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", TurbolinksHelper.encodeUrl(location), action, getRestorationIdentifierOfFragment());
     }
 
     // Execute script
     public void runJavascriptWithEvalResult(String script, @Nullable final TurbolinksJSExecutionResultCallback callback) {
-        String evalCode = "var _result = null; var code = (function () {/*{ " + script + " }*/}).toString().match(/[^]*\\/\\*\\{([^]*)\\}\\*\\/\\}$/)[1]; try { eval(code) } catch (e) { 'JSError:' + e.message; }";
-        webView.evaluateJavascript(evalCode, new ValueCallback<String>() {
+        // The bridge's TLNativeEval helper evaluates the source directly. The regex based wrapper is
+        // only needed on pages the bridge hasn't been injected into.
+        String evalCode = "if (typeof TLNativeEval !== 'undefined') { TLNativeEval.run(" + JavascriptCallSerializer.serializeArguments(script) + ") } else { " +
+                "var _result = null; var code = (function () {/*{ " + script + " }*/}).toString().match(/[^]*\\/\\*\\{([^]*)\\}\\*\\/\\}$/)[1]; try { eval(code) } catch (e) { 'JSError:' + e.message; } }";
+        evaluateJavascript(evalCode, callback);
+    }
+
+    /**
+     * <p>Registers a named script, which is compiled once per page and can then be run with
+     * {@link #runRegisteredJavascript} by passing only its arguments.</p>
+     *
+     * @param name         Unique name of the script.
+     * @param functionBody The body of a function taking one parameter "args", which returns the
+     *                     result, e.g. "return document.querySelectorAll(args.selector).length;".
+     */
+    public void registerJavascript(String name, String functionBody) {
+        synchronized (registeredScripts) {
+            registeredScripts.put(name, functionBody);
+            registeredScriptsInPage.remove(name);
+            scriptRegistrationGeneration++;
+        }
+    }
+
+    /**
+     * <p>Runs a script registered with {@link #registerJavascript}. The script is sent to the page
+     * only the first time it's used there, afterwards just the arguments are.</p>
+     *
+     * @param name     The name the script was registered with.
+     * @param args     The script arguments, JSONified before they are passed as "args". May be null.
+     * @param callback Callback for the result or error.
+     */
+    public void runRegisteredJavascript(final String name, @Nullable Object args, @Nullable final TurbolinksJSExecutionResultCallback callback) {
+        String functionBody;
+        boolean registeredInPage;
+        final long generation;
+        synchronized (registeredScripts) {
+            functionBody = registeredScripts.get(name);
+            registeredInPage = registeredScriptsInPage.contains(name);
+            generation = scriptRegistrationGeneration;
+        }
+
+        if (functionBody == null) {
+            throw new IllegalArgumentException("No script registered as " + name + ".");
+        }
+
+        String serializedName = JavascriptCallSerializer.serializeArguments(name);
+        StringBuilder code = new StringBuilder("if (typeof TLNativeEval === 'undefined') { 'JSError:Bridge not installed' } else { ");
+        if (!registeredInPage) {
+            code.append("TLNativeEval.register(").append(serializedName).append(',').append(JavascriptCallSerializer.serializeArguments(functionBody)).append("); ");
+        }
+        code.append("TLNativeEval.invoke(").append(serializedName).append(',').append(JavascriptCallSerializer.serializeArguments(args)).append(") }");
+
+        evaluateJavascript(code.toString(), new TurbolinksJSExecutionResultCallback() {
+            @Override
+            public void executed(Boolean finished, @Nullable String result, @Nullable Error error) {
+                if (finished) {
+                    synchronized (registeredScripts) {
+                        // A new page started, or the script was registered again, while it ran
+                        if (generation == scriptRegistrationGeneration) {
+                            registeredScriptsInPage.add(name);
+                        }
+                    }
+                }
+
+                if (callback != null) {
+                    callback.executed(finished, result, error);
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Evaluates the code and translates "JSError:" results into errors.</p>
+     *
+     * @param code     The Javascript code.
+     * @param callback Callback for the result or error.
+     */
+    private void evaluateJavascript(String code, @Nullable final TurbolinksJSExecutionResultCallback callback) {
+        webView.evaluateJavascript(code, new ValueCallback<String>() {
             @Override
             public void onReceiveValue(String result) {
                 if (callback != null) {
@@ -1047,28 +1561,39 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
     // Execute script
     public void runJavascriptWithResultAfterFrameRequested(String script, TurbolinksJSExecutionResultCallback callback) {
-        if (executionResultCallback != null) {
-            executionResultCallback.executed(false, null, new Error("Cancelled by subsequent request"));
-        }
-        executionResultCallback = callback;
+        runJavascriptWithResultAfterFrameRequested(script, PendingJavascriptCalls.DEFAULT_TIMEOUT_MILLIS, callback);
+    }
 
-        String callbackScript = "function() { TurbolinksNative.executeResultCallback(_result); }";
+    /**
+     * <p>Runs the script and passes its _result to the callback after the next repaint. Any number
+     * of calls can be in flight at the same time.</p>
+     *
+     * @param script        The script, which assigns its result to _result.
+     * @param timeoutMillis Time after which the callback fails, 0 or less for no timeout.
+     * @param callback      The callback for the result.
+     */
+    public void runJavascriptWithResultAfterFrameRequested(String script, long timeoutMillis, TurbolinksJSExecutionResultCallback callback) {
+        final String callIdentifier = pendingJavascriptCalls.add(callback, timeoutMillis);
+
+        // The result is captured right after the script ran: with several calls in flight, _result
+        // is overwritten before the repaint
+        String callbackScript = "function() { TurbolinksNative.executeResultCallback(" + JavascriptCallSerializer.serializeArguments(callIdentifier) + ", r); }";
 
-        String newScript = script +
+        String newScript = script + "\n;" +
+                "(function(r) {" +
                 "if (typeof(webView) !== 'undefined') {" +
                 "webView.afterNextRepaint(" + callbackScript + ");" +
                 "} else { " +
                 "window.requestAnimationFrame(" + callbackScript + ");" +
-                "}";
+                "}" +
+                "})(typeof(_result) !== 'undefined' ? _result : null);";
 
         runJavascriptWithEvalResult(newScript, new TurbolinksJSExecutionResultCallback() {
             @Override
             public void executed(Boolean finished, @Nullable String result, @Nullable Error error) {
                 // handle error case
                 if (error != null) {
-                    TurbolinksJSExecutionResultCallback currentCallback = executionResultCallback;
-                    executionResultCallback = null;
-                    currentCallback.executed(false, null, error);
+                    pendingJavascriptCalls.fail(callIdentifier, error);
                 }
             }
         });
@@ -1080,23 +1605,98 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
     // ---------------------------------------------------
 
     /**
-     * <p>Adds the restoration (cached scroll position) identifier to the local Hashmap.</p>
+     * <p>The dispatcher group of a visit's completion callbacks. They aren't cancelled when the
+     * next visit starts, as the visit did finish and the adapter must hear about it.</p>
+     *
+     * @param visitIdentifier The visit identifier.
+     * @return The group name.
+     */
+    private static String finishedGroup(String visitIdentifier) {
+        return visitIdentifier + ":finished";
+    }
+
+    /**
+     * <p>Builds a new webView if the session's one was destroyed, e.g. when the session was evicted
+     * from a {@link TurbolinksSessionPool}. The next visit cold boots.</p>
+     */
+    private void ensureWebView() {
+        if (webView == null) {
+            TurbolinksLog.d("Rebuilding the destroyed webView");
+            mountWebClient();
+        }
+    }
+
+    /**
+     * <p>Builds the okhttp client the first time a request needs it, so sessions that never
+     * intercept requests don't create one. Called on webView network threads.</p>
+     */
+    private synchronized RequestInterceptor ensureRequestInterceptor() {
+        if (requestInterceptor == null) {
+            if (cookieHandler == null) {
+                cookieHandler = new TLWebviewCookieHandler(applicationContext);
+            }
+            // Derived from the shared client, so connections and threads outlive this mount
+            client = TurbolinksHttpClient.getClient().newBuilder()
+                    .followRedirects(false)
+                    .followSslRedirects(false)
+                    .cookieJar(cookieHandler).build();
+            requestInterceptor = new RequestInterceptor(client);
+        }
+        return requestInterceptor;
+    }
+
+    /**
+     * <p>Stores the restoration (cached scroll position) identifier of the visiting fragment. Called
+     * on the JavaBridge thread, so the fragment's key was already taken in {@link #visit}.</p>
      *
      * @param value Restoration ID provided by Turbolinks.
      */
-    private void addRestorationIdentifierToMap(String value) {
-        if (fragment != null) {
-            restorationIdentifierMap.put(fragment.toString(), value);
+    private void addRestorationIdentifier(String value) {
+        String key = restorationKey;
+        if (key != null) {
+            restorationIdentifiers.put(key, value);
         }
     }
 
     /**
-     * <p>Gets the restoration ID for the current fragment.</p>
+     * <p>Gets the restoration ID for the visiting fragment.</p>
      *
-     * @return Restoration ID for the current fragment.
+     * @return Restoration ID for the visiting fragment.
+     */
+    private String getRestorationIdentifierOfFragment() {
+        String key = restorationKey;
+        return key != null ? restorationIdentifiers.get(key) : null;
+    }
+
+    /**
+     * <p>Registers the bridge as document start script, if enabled and supported by the WebView.</p>
+     */
+    private void installDocumentStartBridge() {
+        if (!documentStartBridgeEnabled || initPageLoading || webView == null || documentStartScriptHandler != null) {
+            return;
+        }
+
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            TurbolinksLog.d("Document start scripts not supported, injecting bridge on page finished");
+            return;
+        }
+
+        try {
+            documentStartScriptHandler = WebViewCompat.addDocumentStartJavaScript(webView, BridgeScriptCache.getSource(applicationContext), documentStartBridgeOrigins);
+            TurbolinksLog.d("Bridge installed at document start");
+        } catch (IOException | IllegalArgumentException e) {
+            TurbolinksLog.e("Error installing document start bridge: " + e);
+        }
+    }
+
+    /**
+     * <p>Unregisters the document start bridge, so subsequent page loads use the fallback injection.</p>
      */
-    private String getRestorationIdentifierFromMap() {
-        return restorationIdentifierMap.get(fragment.toString());
+    private void removeDocumentStartBridge() {
+        if (documentStartScriptHandler != null) {
+            documentStartScriptHandler.remove();
+            documentStartScriptHandler = null;
+        }
     }
 
     /**
@@ -1128,8 +1728,52 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
             progressIndicatorDelay = 0;
         }
 
+        if (progressDelayPolicy != null) {
+            progressIndicatorDelay = progressDelayPolicy.getDelayMillis(location, progressIndicatorDelay);
+        }
+
         // Executed from here to account for progress indicator delay
         turbolinksView.showProgress(progressView, progressIndicator, progressIndicatorDelay);
+        visitTimelineRecorder.mark(VisitTimeline.Phase.PROGRESS_SHOWN);
+    }
+
+    /**
+     * <p>Hands the latency until the first render of the visit started by the last
+     * {@link #visit(String)} to the progress delay policy, once. Cold boots aren't recorded.</p>
+     */
+    private void recordVisitLatency() {
+        long requestedAt = visitRequestedAtMillis;
+        if (progressDelayPolicy == null || requestedAt == 0) return;
+
+        visitRequestedAtMillis = 0;
+        progressDelayPolicy.recordLatency(location, SystemClock.uptimeMillis() - requestedAt);
+    }
+
+    /**
+     * <p>Cancels the visit still in flight, if any, so it can't render or complete over a newer
+     * visit. Its pending main thread callbacks are dropped as well.</p>
+     */
+    private void cancelInFlightVisit() {
+        String visitIdentifier = visitCancellationTracker.cancelInFlightVisit();
+        if (visitIdentifier == null) return;
+
+        TurbolinksLog.d("Cancelling superseded visit: " + visitIdentifier);
+        mainThreadDispatcher.cancel(visitIdentifier);
+        if (turbolinksIsReady) {
+            runJavascript("webView.cancelVisitWithIdentifier", visitIdentifier);
+        }
+    }
+
+    /**
+     * @param visitIdentifier The visit the event belongs to.
+     * @param event           The event name, for logging.
+     * @return True if the visit was cancelled and the event must be ignored.
+     */
+    private boolean dropCancelledVisitEvent(String visitIdentifier, String event) {
+        if (!visitCancellationTracker.isCancelled(visitIdentifier)) return false;
+
+        TurbolinksLog.d("Dropping " + event + " of cancelled visit: " + visitIdentifier);
+        return true;
     }
 
     /**
@@ -1141,9 +1785,51 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
         TurbolinksLog.d("Visiting current stored location: " + location);
 
         String action = restoreWithCachedSnapshot ? ACTION_RESTORE : ACTION_ADVANCE;
+        if (replacePrewarmedVisit) {
+            // The prewarmed page is already in the history, don't add it twice
+            replacePrewarmedVisit = false;
+            action = ACTION_REPLACE;
+        }
         visitLocationWithAction(location, action);
     }
 
+    /**
+     * <p>Starts the cold boot of a prewarm, unless the session is in use already.</p>
+     *
+     * @param report The report of the prewarm.
+     */
+    private void startPrewarm(PrewarmReport report) {
+        if (fragment != null || turbolinksIsReady || coldBootInProgress || prewarmLocation != null) {
+            TurbolinksLog.d("Session in use, skipping prewarm of: " + report.getLocation());
+            return;
+        }
+
+        TurbolinksLog.d("Prewarming: " + report.getLocation());
+        prewarmReport = report;
+        prewarmLocation = report.getLocation();
+        prewarmInProgress = true;
+        webView.loadUrl(prewarmLocation);
+    }
+
+    /**
+     * <p>Hands a pending prewarm over to the first visit.</p>
+     *
+     * @param location The location of the visit.
+     * @return True if the prewarm went to the same location and its cold boot can be reused.
+     */
+    private boolean consumePrewarm(String location) {
+        if (prewarmLocation == null) return false;
+
+        boolean matches = TextUtils.equals(prewarmLocation, location);
+        prewarmLocation = null;
+        prewarmReport.markFirstVisit();
+        replacePrewarmedVisit = matches;
+        prewarmInProgress = prewarmInProgress && matches;
+
+        TurbolinksLog.d("First visit after prewarm: " + prewarmReport);
+        return matches;
+    }
+
     /**
      * <p>Ensures all required chained calls/parameters ({@link #activity}, {@link #turbolinksView},
      * and location}) are set before calling {@link #visit(String)}.</p>
@@ -1183,7 +1869,7 @@ public class TurbolinksSession implements TurbolinksSwipeRefreshLayoutCallback,
 
     public void refreshWebViewLayout() {
         final WebView localWebView = webView;
-        TurbolinksHelper.runOnMainThread(activity, new Runnable() {
+        mainThreadDispatcher.post(new Runnable() {
             @Override
             public void run() {
                 localWebView.setLayoutParams(new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
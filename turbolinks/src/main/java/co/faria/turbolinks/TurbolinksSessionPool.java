@@ -0,0 +1,214 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Keeps one TurbolinksSession per key, e.g. per tab of a bottom navigation, and caps how many of
+ * them keep a live webView. When the cap is exceeded, and on memory pressure, the least recently
+ * used sessions are evicted: their webView is destroyed, but the session itself stays in the pool
+ * with its last location, so the next {@link #acquire(String)} returns the same session and it
+ * can cold boot again. A reference to an evicted session kept elsewhere stays usable too: the
+ * session builds a new webView on its next use, and counts as resident again.</p>
+ *
+ * <p>The pool registers itself for memory callbacks of the application. Must be used on the main
+ * thread.</p>
+ */
+public class TurbolinksSessionPool implements ComponentCallbacks2 {
+    static final int DEFAULT_MAX_RESIDENT_SESSIONS = 3;
+
+    private final Context applicationContext;
+    private final int maxResidentSessions;
+    private final LinkedHashMap<String, TurbolinksSession> sessions = new LinkedHashMap<>(); // least recently used first, evicted ones included
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param context             Any Android context.
+     * @param maxResidentSessions Maximum number of sessions with a live webView, at least 1.
+     */
+    public TurbolinksSessionPool(Context context, int maxResidentSessions) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context must not be null.");
+        }
+
+        this.applicationContext = context.getApplicationContext();
+        this.maxResidentSessions = Math.max(maxResidentSessions, 1);
+        this.applicationContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * @param context Any Android context.
+     */
+    public TurbolinksSessionPool(Context context) {
+        this(context, DEFAULT_MAX_RESIDENT_SESSIONS);
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns the session of the given key, creating it the first time and rebuilding its webView
+     * if it has been evicted. Other sessions may be evicted to stay within the cap.</p>
+     *
+     * @param key The key, e.g. the tab identifier.
+     * @return The session of the key, always the same instance until {@link #release()}.
+     */
+    public TurbolinksSession acquire(String key) {
+        TurbolinksSession session = sessions.remove(key);
+        if (session == null) {
+            missCount++;
+            session = TurbolinksSession.getNew(applicationContext);
+        } else if (session.webView == null) {
+            missCount++;
+            session.mountWebClient();
+        } else {
+            hitCount++;
+        }
+
+        sessions.put(key, session);
+        trimTo(maxResidentSessions);
+
+        return session;
+    }
+
+    /**
+     * <p>The location to visit with the session of the given key. For an evicted session this is the
+     * location it was showing before, so it can cold boot back to it.</p>
+     *
+     * @param key The key, e.g. the tab identifier.
+     * @return The last location, null if the key never visited anything.
+     */
+    public String getLastLocation(String key) {
+        TurbolinksSession session = sessions.get(key);
+        return session != null ? session.getLocation() : null;
+    }
+
+    /**
+     * <p>Evicts the session of the given key, if it's resident.</p>
+     *
+     * @param key The key, e.g. the tab identifier.
+     */
+    public void evict(String key) {
+        TurbolinksSession session = sessions.get(key);
+        if (session != null && session.webView != null) {
+            evict(key, session);
+        }
+    }
+
+    /**
+     * <p>Evicts all sessions, forgets them and stops listening for memory callbacks. The pool must
+     * not be used afterwards.</p>
+     */
+    public void release() {
+        applicationContext.unregisterComponentCallbacks(this);
+        trimTo(0);
+        sessions.clear();
+    }
+
+    // ---------------------------------------------------
+    // Metrics
+    // ---------------------------------------------------
+
+    /**
+     * @return Number of acquire() calls that returned a resident session.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of acquire() calls that had to create a session or rebuild its webView.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Number of evicted sessions.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return Number of sessions with a live webView.
+     */
+    public int getResidentCount() {
+        int count = 0;
+        for (TurbolinksSession session : sessions.values()) {
+            if (session.webView != null) count++;
+        }
+        return count;
+    }
+
+    // ---------------------------------------------------
+    // ComponentCallbacks2
+    // ---------------------------------------------------
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Sent on every backgrounding, not a sign of memory pressure
+        if (level == TRIM_MEMORY_UI_HIDDEN) return;
+
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            trimTo(0);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(1);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            // running moderate/low: give up the least recently used session
+            trimTo(Math.max(getResidentCount() - 1, 1));
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimTo(1);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void trimTo(int size) {
+        int residentCount = getResidentCount();
+        for (Map.Entry<String, TurbolinksSession> entry : new ArrayList<>(sessions.entrySet())) {
+            if (residentCount <= size) return;
+
+            // Least recently used first, evicted sessions are skipped
+            if (entry.getValue().webView != null) {
+                evict(entry.getKey(), entry.getValue());
+                residentCount--;
+            }
+        }
+    }
+
+    private void evict(String key, TurbolinksSession session) {
+        TurbolinksLog.d("Evicting session: " + key);
+        evictionCount++;
+
+        WebView webView = session.webView;
+        if (webView != null && webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+
+        session.cleanReferences();
+        if (webView != null) {
+            webView.destroy();
+        }
+    }
+}
@@ -1,16 +1,14 @@
 package co.faria.turbolinks;
 
-import static android.os.Looper.getMainLooper;
-
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
-import android.os.Handler;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.view.View;
@@ -33,8 +31,12 @@ import android.widget.ImageView;
 public class TurbolinksView extends FrameLayout {
     private TurbolinksSwipeRefreshLayout refreshLayout = null;
     private View progressView = null;
-    private ImageView screenshotView = null;
+    private ImageView screenshotView = null; // the reusableScreenshotView while a screenshot is shown
+    private ImageView reusableScreenshotView = null;
     private int screenshotOrientation = 0;
+    private int screenshotGeneration = 0;
+    private String location = null;
+    private ScreenshotDiskCache screenshotDiskCache = null;
 
     // ---------------------------------------------------
     // Constructors
@@ -153,8 +155,7 @@ public class TurbolinksView extends FrameLayout {
 
         progressIndicator.setVisibility(View.GONE);
 
-        final Handler handler = new Handler(getMainLooper());
-        handler.postDelayed(new Runnable() {
+        MainThreadDispatcher.getInstance().postDelayed(new Runnable() {
             @Override
             public void run() {
                 progressIndicator.setVisibility(View.VISIBLE);
@@ -214,7 +215,7 @@ public class TurbolinksView extends FrameLayout {
         refreshLayout.addView(webView);
 
         final WebView localWebView = webView;
-        TurbolinksHelper.runOnMainThread(getContext(), new Runnable() {
+        MainThreadDispatcher.getInstance().post(new Runnable() {
             @Override
             public void run() {
                 localWebView.setLayoutParams(new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
@@ -249,6 +250,15 @@ public class TurbolinksView extends FrameLayout {
         if (screenshotView == null) return;
 
         removeView(screenshotView);
+        screenshotGeneration++;
+
+        // Hand the buffer back for the next screenshot, the view itself is reused as well
+        Drawable drawable = screenshotView.getDrawable();
+        screenshotView.setImageDrawable(null);
+        if (drawable instanceof BitmapDrawable) {
+            releaseScreenshot(((BitmapDrawable) drawable).getBitmap());
+        }
+
         screenshotView = null;
         TurbolinksLog.d("Screenshot removed");
     }
@@ -264,61 +274,118 @@ public class TurbolinksView extends FrameLayout {
         // Only take a screenshot if the activity is not finishing
         if (getContext() instanceof Activity && ((Activity) getContext()).isFinishing()) return;
 
-        Bitmap screenshot = getScreenshotBitmap();
-        if (screenshot == null) return;
+        if (getWidth() <= 0 || getHeight() <= 0) return;
 
-        screenshotView = new ImageView(getContext());
-        screenshotView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
-        screenshotView.setClickable(true);
-        screenshotView.setImageBitmap(screenshot);
-        screenshotView.setBackgroundColor(Color.WHITE);
-        screenshotOrientation = getOrientation();
+        removeScreenshotView();
 
-        addView(screenshotView);
+        final String screenshotLocation = location;
+        final int orientation = getOrientation();
+        final ScreenshotEngine.Callback callback = newPlaceholderCallback();
+
+        boolean admitted = ScreenshotEngine.getInstance().capture(this, new ScreenshotEngine.Callback() {
+            @Override
+            public void onScreenshot(Bitmap screenshot) {
+                if (screenshot != null && screenshotDiskCache != null) {
+                    screenshotDiskCache.put(screenshotLocation, orientation, screenshot);
+                }
+                callback.onScreenshot(screenshot);
+            }
+        });
 
-        TurbolinksLog.d("Screenshot taken");
+        if (!admitted) {
+            // Not enough memory, the placeholder isn't shown either
+            screenshotView = null;
+            screenshotGeneration++;
+            return;
+        }
+
+        addView(screenshotView);
     }
 
     /**
-     * <p>Creates a bitmap screenshot of the webview contents from the canvas.</p>
+     * <p>Shows the screenshot of the given location from the disk cache, if there is one, e.g. while
+     * a cold boot is in progress after the process was recreated.</p>
      *
-     * @return The screenshot of the webview contents.
+     * @param location The location being visited.
      */
-    private Bitmap getScreenshotBitmap() {
-        if (!hasEnoughHeapMemoryForScreenshot()) return null;
+    void showCachedScreenshot(String location) {
+        if (screenshotDiskCache == null || screenshotView != null) return;
+        if (!screenshotDiskCache.contains(location, getOrientation())) return;
 
-        if (getWidth() <= 0 || getHeight() <= 0) return null;
+        screenshotDiskCache.get(location, getOrientation(), newPlaceholderCallback());
+        addView(screenshotView);
+        TurbolinksLog.d("Showing cached screenshot of: " + location);
+    }
 
-        Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        draw(new Canvas(bitmap));
-        return bitmap;
+    /**
+     * @param location The location shown in this view, used to key screenshots in the disk cache.
+     */
+    void setLocation(String location) {
+        this.location = location;
     }
 
     /**
-     * Gets the current orientation of the device.
-     *
-     * @return The current orientation.
+     * @param screenshotDiskCache The cache to store screenshots in and show them from, may be null.
      */
-    private int getOrientation() {
-        return getContext().getResources().getConfiguration().orientation;
+    void setScreenshotDiskCache(ScreenshotDiskCache screenshotDiskCache) {
+        this.screenshotDiskCache = screenshotDiskCache;
     }
 
     /**
-     * Determines if the app's memory heap has enough space to create a bitmapped screenshot without
-     * running into an OOM.
+     * <p>Makes the reusable screenshot view the current, still empty, screenshot view. It covers the
+     * view right away, the screenshot is filled in by the returned callback.</p>
      *
-     * @return Whether the heap has over a given % of memory available.
+     * @return The callback to pass the screenshot to.
      */
-    private boolean hasEnoughHeapMemoryForScreenshot() {
-        final Runtime runtime = Runtime.getRuntime();
+    private ScreenshotEngine.Callback newPlaceholderCallback() {
+        if (reusableScreenshotView == null) {
+            reusableScreenshotView = new ImageView(getContext());
+            reusableScreenshotView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            reusableScreenshotView.setClickable(true);
+            reusableScreenshotView.setScaleType(ImageView.ScaleType.FIT_XY);
+            reusableScreenshotView.setBackgroundColor(Color.WHITE);
+        }
+
+        final ImageView placeholder = reusableScreenshotView;
+        final int generation = ++screenshotGeneration;
+        screenshotView = placeholder;
+        screenshotOrientation = getOrientation();
 
-        // Auto casting to floats necessary for division
-        float free = runtime.freeMemory();
-        float total = runtime.totalMemory();
-        float remaining = free / total;
+        return new ScreenshotEngine.Callback() {
+            @Override
+            public void onScreenshot(Bitmap screenshot) {
+                if (screenshot == null) return;
+
+                if (generation == screenshotGeneration && screenshotView == placeholder) {
+                    placeholder.setImageBitmap(screenshot);
+                } else {
+                    // The screenshot was removed before it was ready
+                    releaseScreenshot(screenshot);
+                }
+            }
+        };
+    }
 
-        TurbolinksLog.d("Memory remaining percentage: " + remaining);
+    /**
+     * <p>Hands a screenshot back to the BitmapPool, after the disk cache is done writing it.</p>
+     *
+     * @param screenshot The screenshot.
+     */
+    private void releaseScreenshot(Bitmap screenshot) {
+        BitmapPool pool = BitmapPool.getInstance(getContext());
+        if (screenshotDiskCache != null) {
+            screenshotDiskCache.release(screenshot, pool);
+        } else {
+            pool.release(screenshot);
+        }
+    }
 
-        return remaining > .10;
+    /**
+     * Gets the current orientation of the device.
+     *
+     * @return The current orientation.
+     */
+    private int getOrientation() {
+        return getContext().getResources().getConfiguration().orientation;
     }
 }
@@ -0,0 +1,98 @@
+package co.faria.turbolinks;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * <p>Tracks the visit currently in flight in the webView and remembers recently cancelled visits,
+ * so late events of a superseded visit can be dropped.</p>
+ *
+ * <p>Bridge callbacks arrive on the JavaBridge thread while visits are started on the main thread,
+ * hence all access is synchronized.</p>
+ */
+class VisitCancellationTracker {
+    static final int CANCELLED_HISTORY_SIZE = 16;
+
+    private final LinkedHashSet<String> cancelledVisitIdentifiers = new LinkedHashSet<>();
+    private String inFlightVisitIdentifier;
+    private long cancelledCount;
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Tracks a visit started by Turbolinks. A different visit still in flight is superseded and
+     * counted as cancelled.</p>
+     *
+     * @param visitIdentifier The identifier of the started visit.
+     */
+    synchronized void visitStarted(String visitIdentifier) {
+        if (inFlightVisitIdentifier != null && !inFlightVisitIdentifier.equals(visitIdentifier)) {
+            markCancelled(inFlightVisitIdentifier);
+        }
+        inFlightVisitIdentifier = visitIdentifier;
+    }
+
+    /**
+     * <p>Stops tracking a visit once it completed or failed.</p>
+     *
+     * @param visitIdentifier The identifier of the finished visit.
+     */
+    synchronized void visitFinished(String visitIdentifier) {
+        if (visitIdentifier != null && visitIdentifier.equals(inFlightVisitIdentifier)) {
+            inFlightVisitIdentifier = null;
+        }
+    }
+
+    /**
+     * <p>Marks the visit in flight as cancelled.</p>
+     *
+     * @return The identifier of the cancelled visit, null if no visit was in flight.
+     */
+    synchronized String cancelInFlightVisit() {
+        String visitIdentifier = inFlightVisitIdentifier;
+        if (visitIdentifier != null) {
+            markCancelled(visitIdentifier);
+            inFlightVisitIdentifier = null;
+        }
+        return visitIdentifier;
+    }
+
+    /**
+     * @param visitIdentifier The visit identifier.
+     * @return True if the visit was cancelled and its events should be dropped.
+     */
+    synchronized boolean isCancelled(String visitIdentifier) {
+        return visitIdentifier != null && cancelledVisitIdentifiers.contains(visitIdentifier);
+    }
+
+    /**
+     * @return The identifier of the visit in flight, null if none.
+     */
+    synchronized String getInFlightVisitIdentifier() {
+        return inFlightVisitIdentifier;
+    }
+
+    /**
+     * @return Number of visits cancelled or superseded before they finished.
+     */
+    synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void markCancelled(String visitIdentifier) {
+        cancelledCount++;
+        cancelledVisitIdentifiers.add(visitIdentifier);
+
+        if (cancelledVisitIdentifiers.size() > CANCELLED_HISTORY_SIZE) {
+            Iterator<String> oldest = cancelledVisitIdentifiers.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package co.faria.turbolinks;
+
+import java.util.Arrays;
+
+/**
+ * <p>Monotonic timestamps of the phases of one visit, as recorded by the
+ * {@link VisitTimelineRecorder}.</p>
+ *
+ * <p>Timelines handed to a {@link VisitTimelineListener} are reused by the recorder afterwards. Call
+ * {@link #copy()} to keep one beyond the callback.</p>
+ */
+public class VisitTimeline {
+    /**
+     * The phases of a visit, in their usual order.
+     */
+    public enum Phase {
+        VISIT_REQUESTED,
+        COLD_BOOT_STARTED,
+        PAGE_STARTED,
+        PAGE_FINISHED,
+        BRIDGE_INJECTED,
+        TURBOLINKS_READY,
+        PROGRESS_SHOWN,
+        VISIT_STARTED,
+        REQUEST_COMPLETED,
+        REQUEST_FAILED,
+        RENDERED,
+        COMPLETED,
+        PAGE_INVALIDATED,
+        PROGRESS_HIDDEN
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    final long[] timestampsNanos = new long[PHASES.length];
+    String visitIdentifier;
+    String location;
+    boolean delivered;
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @return The Turbolinks visit identifier, null before the visit has started.
+     */
+    public String getVisitIdentifier() {
+        return visitIdentifier;
+    }
+
+    /**
+     * @return The location passed to TurbolinksSession.visit(), null for visits started by the page.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @param phase The phase.
+     * @return True if the phase was recorded.
+     */
+    public boolean hasPhase(Phase phase) {
+        return timestampsNanos[phase.ordinal()] != 0;
+    }
+
+    /**
+     * @param phase The phase.
+     * @return The {@link android.os.SystemClock#elapsedRealtimeNanos()} timestamp of the phase, 0 if
+     * it wasn't recorded.
+     */
+    public long getTimestampNanos(Phase phase) {
+        return timestampsNanos[phase.ordinal()];
+    }
+
+    /**
+     * @param from The start phase.
+     * @param to   The end phase.
+     * @return Milliseconds between both phases, -1 if one of them wasn't recorded.
+     */
+    public long getDurationMillis(Phase from, Phase to) {
+        if (!hasPhase(from) || !hasPhase(to)) return -1;
+        return (getTimestampNanos(to) - getTimestampNanos(from)) / 1000000;
+    }
+
+    /**
+     * @return True if this visit went through a cold boot.
+     */
+    public boolean isColdBoot() {
+        return hasPhase(Phase.COLD_BOOT_STARTED);
+    }
+
+    /**
+     * @return An independent copy of this timeline.
+     */
+    public VisitTimeline copy() {
+        VisitTimeline copy = new VisitTimeline();
+        System.arraycopy(timestampsNanos, 0, copy.timestampsNanos, 0, timestampsNanos.length);
+        copy.visitIdentifier = visitIdentifier;
+        copy.location = location;
+        copy.delivered = delivered;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("VisitTimeline{").append(visitIdentifier).append(", ").append(location);
+        long start = 0;
+        for (Phase phase : PHASES) {
+            long timestamp = timestampsNanos[phase.ordinal()];
+            if (timestamp == 0) continue;
+            if (start == 0) start = timestamp;
+            builder.append(", ").append(phase).append("=+").append((timestamp - start) / 1000000).append("ms");
+        }
+        return builder.append('}').toString();
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Clears the timeline for reuse.</p>
+     */
+    void reset() {
+        Arrays.fill(timestampsNanos, 0);
+        visitIdentifier = null;
+        location = null;
+        delivered = false;
+    }
+
+    /**
+     * @return True once the visit has ended and a shown progress view is gone again.
+     */
+    boolean isSettled() {
+        boolean ended = hasPhase(Phase.COMPLETED) || hasPhase(Phase.REQUEST_FAILED) || hasPhase(Phase.PAGE_INVALIDATED);
+        return ended && (!hasPhase(Phase.PROGRESS_SHOWN) || hasPhase(Phase.PROGRESS_HIDDEN));
+    }
+}
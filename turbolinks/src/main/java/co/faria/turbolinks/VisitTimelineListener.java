@@ -0,0 +1,14 @@
+package co.faria.turbolinks;
+
+/**
+ * <p>Receives finished visit timelines from a {@link VisitTimelineRecorder}.</p>
+ */
+public interface VisitTimelineListener {
+    /**
+     * <p>Called once per visit. The timeline is reused afterwards, use {@link VisitTimeline#copy()}
+     * to keep it.</p>
+     *
+     * @param timeline The finished timeline.
+     */
+    void onVisitTimelineFinished(VisitTimeline timeline);
+}
@@ -0,0 +1,169 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Records a {@link VisitTimeline} per visit into a fixed ring buffer of preallocated timelines,
+ * so recording doesn't allocate. Finished timelines are handed to the registered
+ * {@link VisitTimelineListener}.</p>
+ *
+ * <p>A timeline is finished once the visit completed, failed or was invalidated and a shown progress
+ * view has been hidden again -- or when a newer visit takes over.</p>
+ */
+public class VisitTimelineRecorder {
+    static final int DEFAULT_CAPACITY = 16;
+
+    private final VisitTimeline[] timelines;
+    private int currentIndex = -1;
+    private int recordedCount;
+    private VisitTimelineListener listener;
+
+    /**
+     * @param capacity Number of recent timelines kept.
+     */
+    public VisitTimelineRecorder(int capacity) {
+        timelines = new VisitTimeline[Math.max(capacity, 1)];
+        for (int i = 0; i < timelines.length; i++) {
+            timelines[i] = new VisitTimeline();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Registers the listener for finished timelines. It's called on the thread that recorded the
+     * last phase and must not hold on to the timeline, see {@link VisitTimeline#copy()}.</p>
+     *
+     * @param listener The listener, null to unregister.
+     */
+    public synchronized void setListener(VisitTimelineListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Copies of the recent timelines, oldest first.
+     */
+    public synchronized List<VisitTimeline> getRecentTimelines() {
+        int count = Math.min(recordedCount, timelines.length);
+        List<VisitTimeline> recent = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            recent.add(timelines[index(currentIndex - i)].copy());
+        }
+        return recent;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts a new timeline, finishing the current one if it wasn't yet.</p>
+     *
+     * @param location The visited location.
+     */
+    synchronized void startVisit(String location) {
+        next().location = location;
+        mark(VisitTimeline.Phase.VISIT_REQUESTED);
+    }
+
+    /**
+     * <p>Records a phase on the current timeline, unless recorded before.</p>
+     *
+     * @param phase The phase.
+     */
+    synchronized void mark(VisitTimeline.Phase phase) {
+        if (currentIndex < 0) return;
+        record(timelines[currentIndex], phase);
+    }
+
+    /**
+     * <p>Records a phase on the timeline of the given visit, if it's still in the buffer.</p>
+     *
+     * @param visitIdentifier The visit identifier.
+     * @param phase           The phase.
+     */
+    synchronized void mark(String visitIdentifier, VisitTimeline.Phase phase) {
+        VisitTimeline timeline = find(visitIdentifier);
+        if (timeline != null) {
+            record(timeline, phase);
+        }
+    }
+
+    /**
+     * <p>Assigns the Turbolinks visit identifier to the current timeline. Visits started by the page
+     * itself, without a TurbolinksSession.visit(), get a new timeline.</p>
+     *
+     * @param visitIdentifier The visit identifier.
+     */
+    synchronized void visitStarted(String visitIdentifier) {
+        if (find(visitIdentifier) != null) return;
+
+        VisitTimeline timeline = currentIndex >= 0 ? timelines[currentIndex] : null;
+        if (timeline == null || timeline.visitIdentifier != null || timeline.delivered) {
+            timeline = next();
+        }
+
+        timeline.visitIdentifier = visitIdentifier;
+        record(timeline, VisitTimeline.Phase.VISIT_STARTED);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private VisitTimeline next() {
+        if (currentIndex >= 0) {
+            deliver(timelines[currentIndex]);
+        }
+
+        currentIndex = index(currentIndex + 1);
+        recordedCount++;
+
+        VisitTimeline timeline = timelines[currentIndex];
+        timeline.reset();
+        return timeline;
+    }
+
+    private void record(VisitTimeline timeline, VisitTimeline.Phase phase) {
+        int index = phase.ordinal();
+        if (timeline.timestampsNanos[index] != 0) return;
+
+        timeline.timestampsNanos[index] = SystemClock.elapsedRealtimeNanos();
+        if (timeline.isSettled()) {
+            deliver(timeline);
+        }
+    }
+
+    private void deliver(VisitTimeline timeline) {
+        if (timeline.delivered) return;
+
+        timeline.delivered = true;
+        if (listener != null) {
+            listener.onVisitTimelineFinished(timeline);
+        }
+    }
+
+    private VisitTimeline find(String visitIdentifier) {
+        if (visitIdentifier == null || currentIndex < 0) return null;
+
+        int count = Math.min(recordedCount, timelines.length);
+        for (int i = 0; i < count; i++) {
+            VisitTimeline timeline = timelines[index(currentIndex - i)];
+            if (TextUtils.equals(timeline.visitIdentifier, visitIdentifier)) {
+                return timeline;
+            }
+        }
+        return null;
+    }
+
+    private int index(int position) {
+        int length = timelines.length;
+        return ((position % length) + length) % length;
+    }
+}
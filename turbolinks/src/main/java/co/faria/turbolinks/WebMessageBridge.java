@@ -0,0 +1,152 @@
+package co.faria.turbolinks;
+
+import android.net.Uri;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * <p>The {@link BridgeTransport#WEB_MESSAGE_PORT} transport. Hands one end of a WebMessageChannel
+ * to the bridge and dispatches the bridge's messages to the matching TurbolinksSession
+ * methods.</p>
+ *
+ * <p>Messages from the bridge are JSON arrays of the form [method, args...]. Outgoing calls are
+ * switched to the port by the {@link JavascriptCommandQueue} once the bridge confirms the
+ * connection. The bridge accepts the port only once per page, and only from native.</p>
+ */
+class WebMessageBridge extends WebMessagePort.WebMessageCallback {
+    static final String PORT_MESSAGE = "turbolinks:port";
+
+    private final TurbolinksSession session;
+    private WebMessagePort port;
+
+    WebMessageBridge(TurbolinksSession session) {
+        this.session = session;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Creates a new channel and sends one end to the bridge in the current page. Must be called
+     * on the main thread.</p>
+     *
+     * @param webView The webView with the ready bridge.
+     */
+    void connect(WebView webView) {
+        disconnect();
+
+        // Never hand the port to "*", any origin could receive it
+        Uri targetOrigin = targetOrigin(webView.getUrl());
+        if (targetOrigin == null) {
+            TurbolinksLog.d("No origin to send the WebMessagePort to, staying on the Javascript interface");
+            return;
+        }
+
+        WebMessagePort[] ports = webView.createWebMessageChannel();
+        port = ports[0];
+        port.setWebMessageCallback(this);
+
+        webView.postWebMessage(new WebMessage(PORT_MESSAGE, new WebMessagePort[]{ports[1]}), targetOrigin);
+        TurbolinksLog.d("WebMessagePort sent to bridge");
+    }
+
+    /**
+     * <p>Closes the channel, e.g. because the page it belonged to is gone.</p>
+     */
+    void disconnect() {
+        if (port == null) return;
+
+        if (session.javascriptQueue != null) {
+            session.javascriptQueue.setMessagePort(null);
+        }
+        port.close();
+        port = null;
+    }
+
+    /**
+     * @return True if the bridge confirmed the connection and calls go through the port.
+     */
+    boolean isConnected() {
+        return port != null && session.javascriptQueue != null && session.javascriptQueue.getMessagePort() == port;
+    }
+
+    // ---------------------------------------------------
+    // WebMessagePort.WebMessageCallback
+    // ---------------------------------------------------
+
+    @Override
+    public void onMessage(WebMessagePort port, WebMessage message) {
+        if (port != this.port || message.getData() == null) return;
+
+        try {
+            dispatch(JsonParser.parseString(message.getData()).getAsJsonArray());
+        } catch (RuntimeException e) {
+            TurbolinksLog.e("Error handling bridge message " + message.getData() + ": " + e);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void dispatch(JsonArray message) {
+        String method = message.get(0).getAsString();
+
+        switch (method) {
+            case "portConnected":
+                if (session.javascriptQueue != null) {
+                    session.javascriptQueue.setMessagePort(port);
+                    TurbolinksLog.d("Bridge switched to WebMessagePort");
+                }
+                break;
+            case "visitProposedToLocationWithAction":
+                session.visitProposedToLocationWithAction(stringAt(message, 1), stringAt(message, 2));
+                break;
+            case "visitStarted":
+                session.visitStarted(stringAt(message, 1), message.get(2).getAsBoolean());
+                break;
+            case "visitRequestCompleted":
+                session.visitRequestCompleted(stringAt(message, 1));
+                break;
+            case "visitRequestFailedWithStatusCode":
+                session.visitRequestFailedWithStatusCode(stringAt(message, 1), message.get(2).getAsInt());
+                break;
+            case "visitRendered":
+                session.visitRendered(stringAt(message, 1));
+                break;
+            case "visitCompleted":
+                session.visitCompleted(stringAt(message, 1), stringAt(message, 2));
+                break;
+            case "pageInvalidated":
+                session.pageInvalidated();
+                break;
+            case "pong":
+                session.pong(stringAt(message, 1));
+                break;
+            default:
+                TurbolinksLog.e("Unknown bridge message: " + method);
+                break;
+        }
+    }
+
+    private static String stringAt(JsonArray message, int index) {
+        if (index >= message.size()) return null;
+
+        JsonElement element = message.get(index);
+        return element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static Uri targetOrigin(String url) {
+        Uri uri = url != null ? Uri.parse(url) : null;
+        if (uri == null || uri.getScheme() == null || uri.getAuthority() == null) {
+            return null;
+        }
+        return Uri.parse(uri.getScheme() + "://" + uri.getAuthority());
+    }
+}
@@ -0,0 +1,64 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class BitmapPoolTest extends BaseTest {
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 200;
+    private static final long BYTES = WIDTH * HEIGHT * 2;
+
+    private BitmapPool pool;
+
+    @Before
+    public void setup() {
+        super.setup();
+        pool = new BitmapPool(BYTES * 2);
+    }
+
+    @Test
+    public void reusesReleasedBitmapOfSameSize() {
+        Bitmap bitmap = pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+        pool.release(bitmap);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(BYTES);
+        assertThat(pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565)).isSameAs(bitmap);
+        assertThat(pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565)).isNotSameAs(bitmap);
+        assertThat(pool.getHitCount()).isEqualTo(1);
+        assertThat(pool.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void staysWithinBudget() {
+        Bitmap first = pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+        Bitmap second = pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+        Bitmap third = pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(BYTES * 2);
+        assertThat(pool.getEvictionCount()).isEqualTo(1);
+        assertThat(first.isRecycled()).isTrue();
+    }
+
+    @Test
+    public void trimMemoryEmptiesPool() {
+        pool.release(pool.acquire(WIDTH, HEIGHT, Bitmap.Config.RGB_565));
+
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,76 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.WebView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class CacheRetentionPolicyTest extends BaseTest {
+    private WebView webView;
+
+    @Before
+    public void setup() {
+        super.setup();
+        webView = mock(WebView.class);
+        preferences().edit().clear().commit();
+    }
+
+    @Test
+    public void keepLeavesCacheAlone() {
+        CacheRetentionPolicy.KEEP.apply(context, webView);
+
+        verify(webView, never()).clearCache(true);
+        verify(webView, never()).clearCache(false);
+    }
+
+    @Test
+    public void clearMemoryKeepsDiskCache() {
+        CacheRetentionPolicy.CLEAR_MEMORY.apply(context, webView);
+
+        verify(webView).clearCache(false);
+        verify(webView, never()).clearCache(true);
+    }
+
+    @Test
+    public void clearAllClearsDiskCache() {
+        CacheRetentionPolicy.CLEAR_ALL.apply(context, webView);
+
+        verify(webView).clearCache(true);
+    }
+
+    @Test
+    public void clearOnVersionChangeClearsDiskCacheOncePerVersion() {
+        CacheRetentionPolicy.CLEAR_ON_VERSION_CHANGE.apply(context, webView);
+        CacheRetentionPolicy.CLEAR_ON_VERSION_CHANGE.apply(context, webView);
+
+        verify(webView).clearCache(true);
+        verify(webView).clearCache(false);
+    }
+
+    @Test
+    public void detectsVersionChange() {
+        assertThat(CacheRetentionPolicy.consumeVersionChange(context)).isTrue();
+        assertThat(CacheRetentionPolicy.consumeVersionChange(context)).isFalse();
+
+        preferences().edit().putString(CacheRetentionPolicy.PREFERENCE_CACHE_VERSION, "1-previous").commit();
+
+        assertThat(CacheRetentionPolicy.consumeVersionChange(context)).isTrue();
+        assertThat(CacheRetentionPolicy.consumeVersionChange(context)).isFalse();
+    }
+
+    private SharedPreferences preferences() {
+        return context.getSharedPreferences(CacheRetentionPolicy.PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,193 @@
+package co.faria.turbolinks;
+
+import android.net.Uri;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class FingerprintedAssetCacheTest extends BaseTest {
+    private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+    private static final String BODY = "console.log('application');";
+
+    private FingerprintedAssetCache cache;
+    private MockWebServer server;
+
+    @Before
+    public void setup() throws IOException {
+        super.setup();
+        cache = new FingerprintedAssetCache(context);
+        cache.clear();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void matchesFingerprintedAssets() {
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/assets/application-" + SHA + ".js"))).isTrue();
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/assets/application-" + SHA + ".css?body=1"))).isTrue();
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/packs/js/application-1a2b3c4d5e.js"))).isTrue();
+    }
+
+    @Test
+    public void ignoresUnfingerprintedFiles() {
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/assets/application.js"))).isFalse();
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/packs/manifest.json"))).isFalse();
+        assertThat(cache.matches(Uri.parse("https://basecamp.com/projects"))).isFalse();
+    }
+
+    @Test
+    public void fileNameIgnoresQuery() {
+        String name = FingerprintedAssetCache.fileName(Uri.parse("https://basecamp.com/assets/application-" + SHA + ".js"));
+
+        assertThat(FingerprintedAssetCache.fileName(Uri.parse("https://basecamp.com/assets/application-" + SHA + ".js?v=2"))).isEqualTo(name);
+        assertThat(FingerprintedAssetCache.fileName(Uri.parse("https://cdn.basecamp.com/assets/application-" + SHA + ".js"))).isNotEqualTo(name);
+    }
+
+    @Test
+    public void servesCompletelyReadAssetFromDisk() throws IOException {
+        enqueueAsset();
+        WebResourceResponse loaded = cache.intercept(request(asset("application")));
+        assertThat(readFully(loaded)).isEqualTo(BODY);
+
+        WebResourceResponse cached = cache.intercept(request(asset("application")));
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(readFully(cached)).isEqualTo(BODY);
+        assertThat(cached.getMimeType()).isEqualTo("application/javascript");
+        assertThat(cached.getEncoding()).isEqualTo("UTF-8");
+        assertThat(cached.getResponseHeaders().get("Access-Control-Allow-Origin")).isEqualTo("*");
+        assertThat(cached.getResponseHeaders().get("Cache-Control")).contains("immutable");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getBytesStored()).isEqualTo(BODY.length());
+    }
+
+    @Test
+    public void doesNotCommitPartiallyReadAsset() throws IOException {
+        enqueueAsset();
+        WebResourceResponse loaded = cache.intercept(request(asset("application")));
+        loaded.getData().read();
+        loaded.getData().close();
+
+        enqueueAsset();
+        assertThat(readFully(cache.intercept(request(asset("application"))))).isEqualTo(BODY);
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(temporaryFiles()).isEmpty();
+    }
+
+    @Test
+    public void trimsLeastRecentlyUsedAsset() throws IOException {
+        enqueueAsset();
+        readFully(cache.intercept(request(asset("application"))));
+        long assetBytes = cache.getSizeBytes();
+        cache.clear();
+
+        FingerprintedAssetCache small = new FingerprintedAssetCache(context, assetBytes * 3 / 2, Arrays.asList(FingerprintedAssetCache.RAILS_ASSET_PATTERN));
+        enqueueAsset();
+        readFully(small.intercept(request(asset("application"))));
+        enqueueAsset();
+        readFully(small.intercept(request(asset("vendor"))));
+
+        assertThat(small.getSizeBytes()).isEqualTo(assetBytes);
+        assertThat(readFully(small.intercept(request(asset("vendor"))))).isEqualTo(BODY);
+        enqueueAsset();
+        readFully(small.intercept(request(asset("application"))));
+        assertThat(server.getRequestCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void deletesLeftoverTemporaryFiles() throws IOException {
+        File directory = new File(context.getCacheDir(), FingerprintedAssetCache.DIRECTORY_NAME);
+        assertThat(directory.isDirectory() || directory.mkdirs()).isTrue();
+        assertThat(new File(directory, "leftover.asset.1.tmp").createNewFile()).isTrue();
+
+        new FingerprintedAssetCache(context).clear();
+
+        assertThat(temporaryFiles()).isEmpty();
+    }
+
+    @Test
+    public void sendsWebViewCookies() throws Exception {
+        String url = asset("application");
+        CookieManager.getInstance().setCookie(url, "session=abc");
+
+        enqueueAsset();
+        readFully(cache.intercept(request(url)));
+
+        assertThat(server.takeRequest().getHeader("Cookie")).contains("session=abc");
+    }
+
+    private String asset(String name) {
+        return server.url("/assets/" + name + "-" + SHA + ".js").toString();
+    }
+
+    private void enqueueAsset() {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/javascript; charset=utf-8")
+                .setHeader("Access-Control-Allow-Origin", "*")
+                .setBody(BODY));
+    }
+
+    private File[] temporaryFiles() {
+        File[] files = new File(context.getCacheDir(), FingerprintedAssetCache.DIRECTORY_NAME).listFiles();
+        if (files == null) return new File[0];
+
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) files[count++] = file;
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private static WebResourceRequest request(String url) {
+        WebResourceRequest request = mock(WebResourceRequest.class);
+        when(request.getUrl()).thenReturn(Uri.parse(url));
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestHeaders()).thenReturn(new HashMap<String, String>());
+        return request;
+    }
+
+    private static String readFully(WebResourceResponse response) throws IOException {
+        assertThat(response).isNotNull();
+
+        InputStream input = response.getData();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int count; (count = input.read(buffer)) != -1; ) {
+            output.write(buffer, 0, count);
+        }
+        input.close();
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package co.faria.turbolinks;
+
+import android.text.TextUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class JavascriptCallSerializerTest extends BaseTest {
+    private static final String VISIT_IDENTIFIER = "visitIdentifierValue";
+    private static final int BENCHMARK_ITERATIONS = 10000;
+
+    // -----------------------------------------------------------------------
+    // Serializing
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void serializesLikeGson() {
+        Object[] params = {"https://basecamp.com/a b?q=\"x\"\\\n\t\u0001 </script>", 42, -7L, true, null, 1.5, Collections.singletonMap("key", "value")};
+
+        assertThat(JavascriptCallSerializer.serializeArguments(params)).isEqualTo(legacySerialize(params.clone()));
+    }
+
+    @Test
+    public void doesNotModifyParams() {
+        Object[] params = {VISIT_IDENTIFIER, 1};
+        JavascriptCallSerializer.serializeArguments(params);
+
+        assertThat(params[0]).isEqualTo(VISIT_IDENTIFIER);
+        assertThat(params[1]).isEqualTo(1);
+    }
+
+    @Test
+    public void serializesEmptyParams() {
+        assertThat(JavascriptCallSerializer.serializeArguments()).isEqualTo("");
+        assertThat(JavascriptCallSerializer.serializeArguments((Object[]) null)).isEqualTo("");
+    }
+
+    // -----------------------------------------------------------------------
+    // Benchmark
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void allocatesLessThanGsonPerCall() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up both paths first
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            legacySerialize(new Object[]{VISIT_IDENTIFIER});
+            JavascriptCallSerializer.serializeArguments(VISIT_IDENTIFIER);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            legacySerialize(new Object[]{VISIT_IDENTIFIER});
+        }
+        long legacyBytes = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            JavascriptCallSerializer.serializeArguments(VISIT_IDENTIFIER);
+        }
+        long serializerBytes = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // A Gson instance per call costs kilobytes, the serializer only allocates the result string
+        assertThat(serializerBytes).isLessThan(legacyBytes / 4);
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    /**
+     * The previous TurbolinksHelper.runJavascript serialization, minus the loadUrl call.
+     */
+    private static String legacySerialize(Object[] params) {
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        for (int i = 0; i < params.length; i++) {
+            params[i] = gson.toJson(params[i]);
+        }
+
+        String fullJs = String.format("javascript: %s(%s);", "webView.issueRequestForVisitWithIdentifier", TextUtils.join(",", params));
+        return fullJs.substring(fullJs.indexOf('(') + 1, fullJs.length() - 2);
+    }
+}
@@ -0,0 +1,86 @@
+package co.faria.turbolinks;
+
+import android.webkit.WebView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class JavascriptCommandQueueTest extends BaseTest {
+    private WebView webView;
+    private JavascriptCommandQueue queue;
+
+    @Before
+    public void setup() {
+        super.setup();
+        webView = mock(WebView.class);
+        queue = new JavascriptCommandQueue(webView);
+    }
+
+    @Test
+    public void batchesCommandsIntoOnePayload() {
+        queue.enqueue("webView.first", "1");
+        queue.enqueueRaw("var second = 2;");
+        queue.enqueue("webView.third", "\"3\"");
+        queue.flush();
+
+        String script = flushedScript();
+        assertThat(script.split("\n")).hasSize(3);
+        assertThat(queue.getFlushCount()).isEqualTo(1);
+        assertThat(queue.getCommandCount()).isEqualTo(3);
+        assertThat(queue.getMaxCommandsPerFlush()).isEqualTo(3);
+    }
+
+    @Test
+    public void keepsCommandOrder() {
+        queue.enqueue("webView.first", "");
+        queue.enqueueRaw("second()");
+        queue.enqueue("webView.third", "");
+        queue.flush();
+
+        String script = flushedScript();
+        int first = script.indexOf("webView.first()");
+        int second = script.indexOf("second()");
+        int third = script.indexOf("webView.third()");
+        assertThat(first).isGreaterThanOrEqualTo(0);
+        assertThat(second).isGreaterThan(first);
+        assertThat(third).isGreaterThan(second);
+    }
+
+    @Test
+    public void runsRawJavascriptAsIndirectEval() {
+        queue.enqueueRaw("function global() {}\n// trailing comment");
+        queue.flush();
+
+        assertThat(flushedScript()).isEqualTo("try{(0,eval)(\"function global() {}\\n// trailing comment\")}catch(e){setTimeout(function(){throw e})}\n");
+    }
+
+    @Test
+    public void releasedQueueDropsCommands() {
+        queue.enqueue("webView.first", "");
+        queue.release();
+        queue.enqueue("webView.second", "");
+        queue.flush();
+
+        verify(webView, never()).evaluateJavascript(anyString(), any());
+        assertThat(queue.getCommandCount()).isEqualTo(0);
+    }
+
+    private String flushedScript() {
+        ArgumentCaptor<String> script = ArgumentCaptor.forClass(String.class);
+        verify(webView).evaluateJavascript(script.capture(), any());
+        return script.getValue();
+    }
+}
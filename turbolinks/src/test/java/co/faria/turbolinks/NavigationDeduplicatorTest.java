@@ -0,0 +1,56 @@
+package co.faria.turbolinks;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class NavigationDeduplicatorTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com/projects";
+
+    private NavigationDeduplicator deduplicator;
+
+    @Before
+    public void setup() {
+        super.setup();
+        deduplicator = new NavigationDeduplicator();
+    }
+
+    @Test
+    public void suppressesDuplicateWithinWindow() {
+        assertThat(deduplicator.shouldNavigate(LOCATION, TurbolinksSession.ACTION_ADVANCE)).isTrue();
+        assertThat(deduplicator.shouldNavigate(LOCATION + "/#top", TurbolinksSession.ACTION_ADVANCE)).isFalse();
+        assertThat(deduplicator.getSuppressedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void allowsDifferentLocationOrAction() {
+        assertThat(deduplicator.shouldNavigate(LOCATION, TurbolinksSession.ACTION_ADVANCE)).isTrue();
+        assertThat(deduplicator.shouldNavigate("https://basecamp.com/people", TurbolinksSession.ACTION_ADVANCE)).isTrue();
+        assertThat(deduplicator.shouldNavigate(LOCATION, TurbolinksSession.ACTION_REPLACE)).isTrue();
+        assertThat(deduplicator.getSuppressedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void allowsRepeatAfterWindow() {
+        assertThat(deduplicator.shouldNavigate(LOCATION, TurbolinksSession.ACTION_ADVANCE)).isTrue();
+
+        // Robolectric advances its clock instead of sleeping
+        SystemClock.sleep(NavigationDeduplicator.DEFAULT_WINDOW_MILLIS);
+
+        assertThat(deduplicator.shouldNavigate(LOCATION, TurbolinksSession.ACTION_ADVANCE)).isTrue();
+    }
+
+    @Test
+    public void normalizesLocations() {
+        assertThat(NavigationDeduplicator.normalize("HTTPS://BaseCamp.com/Projects/?page=2#top"))
+                .isEqualTo("https://basecamp.com/Projects?page=2");
+    }
+}
@@ -0,0 +1,113 @@
+package co.faria.turbolinks;
+
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class PendingJavascriptCallsTest extends BaseTest {
+    private PendingJavascriptCalls pendingCalls;
+
+    @Before
+    public void setup() {
+        super.setup();
+        pendingCalls = new PendingJavascriptCalls();
+    }
+
+    @Test
+    public void concurrentCallsGetTheirOwnResults() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        String firstIdentifier = pendingCalls.add(first, 0);
+        String secondIdentifier = pendingCalls.add(second, 0);
+
+        assertThat(firstIdentifier).isNotEqualTo(secondIdentifier);
+        assertThat(pendingCalls.getInFlightCount()).isEqualTo(2);
+
+        pendingCalls.complete(secondIdentifier, "\"two\"");
+        pendingCalls.complete(firstIdentifier, "\"one\"");
+
+        assertThat(first.results).containsExactly("\"one\"");
+        assertThat(second.results).containsExactly("\"two\"");
+        assertThat(pendingCalls.getCompletedCount()).isEqualTo(2);
+        assertThat(pendingCalls.getInFlightCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void javascriptErrorFailsTheCall() {
+        RecordingCallback callback = new RecordingCallback();
+        String identifier = pendingCalls.add(callback, 0);
+
+        pendingCalls.complete(identifier, "\"JSError:boom\"");
+
+        assertThat(callback.errors).hasSize(1);
+        assertThat(callback.errors.get(0).getMessage()).startsWith("boom");
+        assertThat(pendingCalls.getFailedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void timesOut() {
+        RecordingCallback callback = new RecordingCallback();
+        pendingCalls.add(callback, 100);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(callback.errors).hasSize(1);
+        assertThat(callback.errors.get(0).getMessage()).isEqualTo("Timed out");
+        assertThat(pendingCalls.getTimedOutCount()).isEqualTo(1);
+        assertThat(pendingCalls.getInFlightCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void ignoresCompleteAndFailAfterTimeout() {
+        RecordingCallback callback = new RecordingCallback();
+        String identifier = pendingCalls.add(callback, 100);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        pendingCalls.complete(identifier, "\"late\"");
+        pendingCalls.fail(identifier, new Error("late"));
+
+        assertThat(callback.results).isEmpty();
+        assertThat(callback.errors).hasSize(1);
+        assertThat(pendingCalls.getCompletedCount()).isEqualTo(0);
+        assertThat(pendingCalls.getFailedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void completedCallDoesNotTimeOut() {
+        RecordingCallback callback = new RecordingCallback();
+        String identifier = pendingCalls.add(callback, 100);
+
+        pendingCalls.complete(identifier, "\"done\"");
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(callback.results).containsExactly("\"done\"");
+        assertThat(callback.errors).isEmpty();
+        assertThat(pendingCalls.getTimedOutCount()).isEqualTo(0);
+    }
+
+    private static class RecordingCallback implements TurbolinksJSExecutionResultCallback {
+        final List<String> results = new ArrayList<>();
+        final List<Error> errors = new ArrayList<>();
+
+        @Override
+        public void executed(Boolean finished, @Nullable String result, @Nullable Error error) {
+            if (error != null) {
+                errors.add(error);
+            } else {
+                results.add(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package co.faria.turbolinks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class ProgressDelayPolicyTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com/projects/123";
+    private static final int DEFAULT_DELAY = 250;
+
+    private ProgressDelayPolicy policy;
+
+    @Before
+    public void setup() {
+        super.setup();
+        policy = new ProgressDelayPolicy(context);
+        policy.clear();
+    }
+
+    @Test
+    public void routeReplacesIdentifiers() {
+        assertThat(ProgressDelayPolicy.routeOf(LOCATION + "?tab=files")).isEqualTo("basecamp.com/projects/:id");
+        assertThat(ProgressDelayPolicy.routeOf("https://basecamp.com/projects/456")).isEqualTo(ProgressDelayPolicy.routeOf(LOCATION));
+    }
+
+    @Test
+    public void usesDefaultDelayWithoutEnoughSamples() {
+        policy.recordLatency(LOCATION, 120);
+
+        assertThat(policy.getDelayMillis(LOCATION, DEFAULT_DELAY)).isEqualTo(DEFAULT_DELAY);
+    }
+
+    @Test
+    public void fastRouteDelaysIndicatorByPercentile() {
+        recordLatencies(LOCATION, 120);
+
+        assertThat(policy.getDelayMillis(LOCATION, DEFAULT_DELAY)).isEqualTo(150);
+    }
+
+    @Test
+    public void slowRouteShowsIndicatorRightAway() {
+        recordLatencies(LOCATION, 3000);
+
+        assertThat(policy.getDelayMillis(LOCATION, DEFAULT_DELAY)).isEqualTo(0);
+    }
+
+    @Test
+    public void persistsAcrossInstances() {
+        recordLatencies(LOCATION, 120);
+
+        ProgressDelayPolicy restored = new ProgressDelayPolicy(context);
+        assertThat(restored.getDelayMillis(LOCATION, DEFAULT_DELAY)).isEqualTo(150);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedRouteAfterRestart() {
+        int[] histogram = new int[ProgressDelayPolicy.BUCKET_BOUNDS_MILLIS.length + 1];
+        histogram[1] = ProgressDelayPolicy.MIN_SAMPLES;
+
+        // Newest first, so insertion order doesn't match last use
+        SharedPreferences.Editor editor = context.getSharedPreferences(ProgressDelayPolicy.PREFERENCES_NAME, Context.MODE_PRIVATE).edit();
+        for (int i = ProgressDelayPolicy.MAX_ROUTES; i >= 0; i--) {
+            editor.putString("basecamp.com/route" + i, ProgressDelayPolicy.encode(histogram, 1000 + i));
+        }
+        editor.commit();
+
+        ProgressDelayPolicy restored = new ProgressDelayPolicy(context);
+
+        assertThat(restored.getDelayMillis("https://basecamp.com/route0", DEFAULT_DELAY)).isEqualTo(DEFAULT_DELAY);
+        assertThat(restored.getDelayMillis("https://basecamp.com/route1", DEFAULT_DELAY)).isEqualTo(100);
+    }
+
+    @Test
+    public void decodesHistogramsStoredWithoutLastUse() {
+        int[] histogram = new int[ProgressDelayPolicy.BUCKET_BOUNDS_MILLIS.length + 1];
+        histogram[2] = 3;
+        String encoded = ProgressDelayPolicy.encode(histogram, 42);
+        String legacy = encoded.substring(0, encoded.indexOf(';'));
+
+        assertThat(ProgressDelayPolicy.decode(encoded)).isEqualTo(histogram);
+        assertThat(ProgressDelayPolicy.decode(legacy)).isEqualTo(histogram);
+        assertThat(ProgressDelayPolicy.lastUsedOf(encoded)).isEqualTo(42);
+        assertThat(ProgressDelayPolicy.lastUsedOf(legacy)).isEqualTo(0);
+    }
+
+    private void recordLatencies(String location, long latencyMillis) {
+        for (int i = 0; i < ProgressDelayPolicy.MIN_SAMPLES; i++) {
+            policy.recordLatency(location, latencyMillis);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package co.faria.turbolinks;
+
+import android.os.Bundle;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class RestorationIdentifierStoreTest extends BaseTest {
+    private static final String RESTORATION_IDENTIFIER = "restorationIdentifierValue";
+
+    private FragmentManager fragmentManager;
+
+    @Before
+    public void setup() {
+        super.setup();
+        fragmentManager = Robolectric.buildActivity(FragmentActivity.class).setup().get().getSupportFragmentManager();
+    }
+
+    @Test
+    public void keyIsStableAcrossFragmentInstances() {
+        Fragment fragment = add("home");
+        String key = RestorationIdentifierStore.keyOf(fragment);
+        fragmentManager.beginTransaction().remove(fragment).commitNow();
+
+        assertThat(RestorationIdentifierStore.keyOf(add("home"))).isEqualTo(key);
+        assertThat(RestorationIdentifierStore.keyOf(add("inbox"))).isNotEqualTo(key);
+    }
+
+    @Test
+    public void keyLeavesArgumentsAlone() {
+        Bundle sharedArguments = new Bundle();
+        Fragment first = new Fragment();
+        Fragment second = new Fragment();
+        first.setArguments(sharedArguments);
+        second.setArguments(sharedArguments);
+        fragmentManager.beginTransaction().add(first, "first").add(second, "second").commitNow();
+
+        assertThat(RestorationIdentifierStore.keyOf(first)).isNotEqualTo(RestorationIdentifierStore.keyOf(second));
+        assertThat(sharedArguments.isEmpty()).isTrue();
+        assertThat(RestorationIdentifierStore.keyOf(new Fragment())).isNotNull();
+    }
+
+    @Test
+    public void keyIncludesBackStackEntry() {
+        Fragment root = add("page");
+        String rootKey = RestorationIdentifierStore.keyOf(root);
+
+        Fragment pushed = new Fragment();
+        fragmentManager.beginTransaction().add(pushed, "page").addToBackStack(null).commit();
+        fragmentManager.executePendingTransactions();
+
+        assertThat(RestorationIdentifierStore.keyOf(pushed)).isNotEqualTo(rootKey);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        RestorationIdentifierStore store = new RestorationIdentifierStore(2);
+        String first = RestorationIdentifierStore.keyOf(add("first"));
+        String second = RestorationIdentifierStore.keyOf(add("second"));
+        String third = RestorationIdentifierStore.keyOf(add("third"));
+
+        store.put(first, "1");
+        store.put(second, "2");
+        store.get(first);
+        store.put(third, "3");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get(first)).isEqualTo("1");
+        assertThat(store.get(second)).isNull();
+    }
+
+    @Test
+    public void restoresSavedState() {
+        RestorationIdentifierStore store = new RestorationIdentifierStore(2);
+        String key = RestorationIdentifierStore.keyOf(add("home"));
+        store.put(key, RESTORATION_IDENTIFIER);
+
+        Bundle state = new Bundle();
+        store.saveTo(state);
+
+        RestorationIdentifierStore restored = new RestorationIdentifierStore(2);
+        restored.restoreFrom(state);
+
+        assertThat(restored.get(key)).isEqualTo(RESTORATION_IDENTIFIER);
+    }
+
+    private Fragment add(String tag) {
+        Fragment fragment = new Fragment();
+        fragmentManager.beginTransaction().add(fragment, tag).commitNow();
+        return fragment;
+    }
+}
@@ -0,0 +1,51 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class ScreenshotAdmissionPolicyTest extends BaseTest {
+    private static final long SCREENSHOT_BYTES = 4 * 1024 * 1024;
+
+    @Test
+    public void admitsFullScreenshotWithEnoughHeadroom() {
+        ScreenshotAdmissionPolicy policy = new ScreenshotAdmissionPolicy(false);
+
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES * 8)).isEqualTo(ScreenshotAdmissionPolicy.Decision.FULL);
+        assertThat(policy.getDecisionCount(ScreenshotAdmissionPolicy.Decision.FULL)).isEqualTo(1);
+    }
+
+    @Test
+    public void reducesOrDeniesWithLittleHeadroom() {
+        ScreenshotAdmissionPolicy policy = new ScreenshotAdmissionPolicy(false);
+
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES * 2)).isEqualTo(ScreenshotAdmissionPolicy.Decision.REDUCED);
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES / 2)).isEqualTo(ScreenshotAdmissionPolicy.Decision.DENIED);
+        assertThat(policy.getLastHeadroomBytes()).isEqualTo(SCREENSHOT_BYTES / 2);
+    }
+
+    @Test
+    public void lowRamDeviceGetsReducedScreenshots() {
+        ScreenshotAdmissionPolicy policy = new ScreenshotAdmissionPolicy(true);
+
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES * 8)).isEqualTo(ScreenshotAdmissionPolicy.Decision.REDUCED);
+    }
+
+    @Test
+    public void followsTrimLevels() {
+        ScreenshotAdmissionPolicy policy = new ScreenshotAdmissionPolicy(false);
+
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES * 8)).isEqualTo(ScreenshotAdmissionPolicy.Decision.REDUCED);
+
+        policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertThat(policy.admit(SCREENSHOT_BYTES, SCREENSHOT_BYTES * 8)).isEqualTo(ScreenshotAdmissionPolicy.Decision.DENIED);
+    }
+}
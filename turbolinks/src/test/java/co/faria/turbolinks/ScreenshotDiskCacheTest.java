@@ -0,0 +1,135 @@
+package co.faria.turbolinks;
+
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class ScreenshotDiskCacheTest extends BaseTest {
+    private static final int ORIENTATION = Configuration.ORIENTATION_PORTRAIT;
+    private static final String HOME = "https://basecamp.com/home";
+    private static final String INBOX = "https://basecamp.com/inbox";
+    private static final String PROFILE = "https://basecamp.com/profile";
+
+    private ScreenshotDiskCache cache;
+
+    @Before
+    public void setup() {
+        super.setup();
+        cache = newCache(ScreenshotDiskCache.DEFAULT_MAX_BYTES);
+        cache.clear();
+        idle(cache);
+    }
+
+    @Test
+    public void getsStoredScreenshot() {
+        assertThat(cache.contains(HOME, ORIENTATION)).isFalse();
+
+        cache.put(HOME, ORIENTATION, newScreenshot());
+        idle(cache);
+
+        assertThat(cache.contains(HOME, ORIENTATION)).isTrue();
+        assertThat(cache.contains(HOME, Configuration.ORIENTATION_LANDSCAPE)).isFalse();
+        assertThat(cache.getWriteCount()).isEqualTo(1);
+        assertThat(get(HOME)).isNotNull();
+        assertThat(get(INBOX)).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void trimsLeastRecentlyUsedScreenshot() {
+        cache.put(HOME, ORIENTATION, newScreenshot());
+        idle(cache);
+        long screenshotBytes = cache.getSizeBytes();
+        cache.clear();
+        idle(cache);
+
+        ScreenshotDiskCache small = newCache(screenshotBytes * 2);
+        small.put(HOME, ORIENTATION, newScreenshot());
+        small.put(INBOX, ORIENTATION, newScreenshot());
+        idle(small);
+        get(small, HOME);
+        small.put(PROFILE, ORIENTATION, newScreenshot());
+        idle(small);
+
+        assertThat(small.contains(HOME, ORIENTATION)).isTrue();
+        assertThat(small.contains(INBOX, ORIENTATION)).isFalse();
+        assertThat(small.contains(PROFILE, ORIENTATION)).isTrue();
+        assertThat(small.getSizeBytes()).isLessThanOrEqualTo(screenshotBytes * 2);
+    }
+
+    @Test
+    public void releasesScreenshotOnceWritten() {
+        BitmapPool pool = new BitmapPool(BitmapPool.DEFAULT_MAX_BYTES);
+        Bitmap screenshot = newScreenshot();
+
+        shadowOf(cache.handler.getLooper()).pause();
+        cache.put(HOME, ORIENTATION, screenshot);
+        cache.release(screenshot, pool);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(0);
+
+        idle(cache);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(BitmapPool.byteCount(screenshot));
+    }
+
+    @Test
+    public void releasesUnwrittenScreenshotRightAway() {
+        BitmapPool pool = new BitmapPool(BitmapPool.DEFAULT_MAX_BYTES);
+        Bitmap screenshot = newScreenshot();
+
+        cache.release(screenshot, pool);
+
+        assertThat(pool.getPooledBytes()).isEqualTo(BitmapPool.byteCount(screenshot));
+    }
+
+    private ScreenshotDiskCache newCache(long maxBytes) {
+        ScreenshotDiskCache cache = new ScreenshotDiskCache(context, maxBytes);
+        idle(cache);
+        return cache;
+    }
+
+    private Bitmap get(String location) {
+        return get(cache, location);
+    }
+
+    private Bitmap get(ScreenshotDiskCache cache, String location) {
+        final List<Bitmap> screenshots = new ArrayList<>();
+        cache.get(location, ORIENTATION, new ScreenshotEngine.Callback() {
+            @Override
+            public void onScreenshot(Bitmap screenshot) {
+                screenshots.add(screenshot);
+            }
+        });
+        idle(cache);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(screenshots).hasSize(1);
+        return screenshots.get(0);
+    }
+
+    private static void idle(ScreenshotDiskCache cache) {
+        ShadowLooper looper = shadowOf(cache.handler.getLooper());
+        looper.idle();
+        looper.unPause();
+    }
+
+    private static Bitmap newScreenshot() {
+        return Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888);
+    }
+}
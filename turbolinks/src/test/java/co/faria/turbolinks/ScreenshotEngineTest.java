@@ -0,0 +1,98 @@
+package co.faria.turbolinks;
+
+import android.graphics.Bitmap;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class ScreenshotEngineTest extends BaseTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+
+    private ScreenshotEngine engine;
+    private View view;
+
+    @Before
+    public void setup() {
+        super.setup();
+        engine = ScreenshotEngine.getInstance();
+        view = new View(context);
+        view.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    @After
+    public void teardown() {
+        engine.setScale(ScreenshotEngine.DEFAULT_SCALE);
+        engine.setBitmapConfig(Bitmap.Config.RGB_565);
+    }
+
+    @Test
+    public void drawsDetachedViewDownscaled() {
+        long captureCount = engine.getCaptureCount();
+        long totalCaptureBytes = engine.getTotalCaptureBytes();
+
+        Bitmap screenshot = capture();
+
+        // Not attached to a window, so drawn on the calling thread instead of PixelCopy
+        assertThat(screenshot.getWidth()).isEqualTo(WIDTH / 2);
+        assertThat(screenshot.getHeight()).isEqualTo(HEIGHT / 2);
+        assertThat(screenshot.getConfig()).isEqualTo(Bitmap.Config.RGB_565);
+        assertThat(engine.getCaptureCount()).isEqualTo(captureCount + 1);
+        assertThat(engine.getLastCaptureBytes()).isEqualTo((WIDTH / 2) * (HEIGHT / 2) * 2);
+        assertThat(engine.getTotalCaptureBytes()).isEqualTo(totalCaptureBytes + (WIDTH / 2) * (HEIGHT / 2) * 2);
+    }
+
+    @Test
+    public void capturesWithConfiguredScaleAndConfig() {
+        engine.setScale(1f);
+        engine.setBitmapConfig(Bitmap.Config.ARGB_8888);
+
+        Bitmap screenshot = capture();
+
+        assertThat(screenshot.getWidth()).isEqualTo(WIDTH);
+        assertThat(screenshot.getHeight()).isEqualTo(HEIGHT);
+        assertThat(screenshot.getConfig()).isEqualTo(Bitmap.Config.ARGB_8888);
+        assertThat(engine.getLastCaptureBytes()).isEqualTo(WIDTH * HEIGHT * 4);
+    }
+
+    @Test
+    public void clampsScale() {
+        engine.setScale(5f);
+        assertThat(capture().getWidth()).isEqualTo(WIDTH);
+
+        engine.setScale(0f);
+        assertThat(capture().getWidth()).isEqualTo(WIDTH / 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedConfig() {
+        engine.setBitmapConfig(Bitmap.Config.ALPHA_8);
+    }
+
+    private Bitmap capture() {
+        final List<Bitmap> screenshots = new ArrayList<>();
+        boolean admitted = engine.capture(view, new ScreenshotEngine.Callback() {
+            @Override
+            public void onScreenshot(Bitmap screenshot) {
+                screenshots.add(screenshot);
+            }
+        });
+
+        assertThat(admitted).isTrue();
+        assertThat(screenshots).hasSize(1);
+        assertThat(screenshots.get(0)).isNotNull();
+        return screenshots.get(0);
+    }
+}
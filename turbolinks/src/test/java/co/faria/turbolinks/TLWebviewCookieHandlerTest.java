@@ -0,0 +1,96 @@
+package co.faria.turbolinks;
+
+import android.webkit.CookieManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TLWebviewCookieHandlerTest extends BaseTest {
+    private static final HttpUrl URL = HttpUrl.parse("https://basecamp.com/projects");
+
+    private TLWebviewCookieHandler cookieHandler;
+
+    @Before
+    public void setup() {
+        super.setup();
+        CookieManager.getInstance().removeAllCookie();
+        CookieManager.getInstance().setCookie(URL.toString(), "session=1");
+        cookieHandler = new TLWebviewCookieHandler();
+        cookieHandler.setCacheTtlMillis(10000);
+    }
+
+    @Test
+    public void servesRepeatedLoadsFromCache() {
+        List<Cookie> first = cookieHandler.loadForRequest(URL);
+        List<Cookie> second = cookieHandler.loadForRequest(HttpUrl.parse("https://basecamp.com/projects?page=2"));
+
+        assertThat(first).hasSize(1);
+        assertThat(second).isSameAs(first);
+        assertThat(cookieHandler.getHitCount()).isEqualTo(1);
+        assertThat(cookieHandler.getMissCount()).isEqualTo(1);
+        assertThat(cookieHandler.getHitRate()).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void cachesPathsSeparately() {
+        cookieHandler.loadForRequest(URL);
+        cookieHandler.loadForRequest(HttpUrl.parse("https://basecamp.com/people"));
+        cookieHandler.loadForRequest(HttpUrl.parse("http://basecamp.com/projects"));
+
+        assertThat(cookieHandler.getHitCount()).isEqualTo(0);
+        assertThat(cookieHandler.getMissCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void saveFromResponseInvalidatesAllPaths() {
+        HttpUrl people = HttpUrl.parse("https://basecamp.com/people");
+        cookieHandler.loadForRequest(URL);
+        cookieHandler.loadForRequest(people);
+        cookieHandler.saveFromResponse(URL, Collections.singletonList(Cookie.parse(URL, "token=2; Path=/")));
+        cookieHandler.loadForRequest(people);
+
+        assertThat(cookieHandler.getHitCount()).isEqualTo(0);
+        assertThat(cookieHandler.getMissCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void writesSavedCookiesRightAway() {
+        cookieHandler.saveFromResponse(URL, Collections.singletonList(Cookie.parse(URL, "token=2")));
+
+        assertThat(CookieManager.getInstance().getCookie(URL.toString())).contains("token=2");
+        assertThat(cookieHandler.getUnflushedCookieCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void clearCacheInvalidatesAllHosts() {
+        cookieHandler.loadForRequest(URL);
+        cookieHandler.clearCache();
+        cookieHandler.loadForRequest(URL);
+
+        assertThat(cookieHandler.getHitCount()).isEqualTo(0);
+        assertThat(cookieHandler.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void cacheIsDisabledByDefault() {
+        TLWebviewCookieHandler uncached = new TLWebviewCookieHandler();
+        uncached.loadForRequest(URL);
+        uncached.loadForRequest(URL);
+
+        assertThat(uncached.getHitCount()).isEqualTo(0);
+        assertThat(uncached.getMissCount()).isEqualTo(2);
+    }
+}
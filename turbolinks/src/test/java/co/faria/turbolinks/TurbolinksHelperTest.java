@@ -40,17 +40,4 @@ public class TurbolinksHelperTest extends BaseTest {
         String url = "http://basecamp.com/search?q=test test + testing & /testfile .mp4";
         assertThat(TurbolinksHelper.encodeUrl(url)).doesNotContain(" ");
     }
-
-//    TODO: Robolectric having trouble with local resources directory
-//    @Test
-//    public void getContentFromAssetFile() {
-//        try {
-//            TurbolinksHelper.getContentFromAssetFile(context, "js/turbolinks_bridge.js");
-//        } catch (IOException e) {
-//            Log.d("TurbolinksHelpler", e.toString());
-//            assertThat(0).isEqualTo(1);
-//        } finally {
-//            assertThat(2).isEqualTo(2);
-//        }
-//    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package co.faria.turbolinks;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksHttpClientTest extends BaseTest {
+    @After
+    public void teardown() {
+        TurbolinksHttpClient.setHttp2Enabled(true);
+    }
+
+    @Test
+    public void reusesClient() {
+        assertThat(TurbolinksHttpClient.getClient()).isSameAs(TurbolinksHttpClient.getClient());
+    }
+
+    @Test
+    public void configurationReleasesReplacedClient() {
+        OkHttpClient replaced = TurbolinksHttpClient.getClient();
+
+        TurbolinksHttpClient.setHttp2Enabled(false);
+        OkHttpClient client = TurbolinksHttpClient.getClient();
+
+        assertThat(client).isNotSameAs(replaced);
+        assertThat(client.protocols()).containsExactly(Protocol.HTTP_1_1);
+        assertThat(replaced.dispatcher().executorService().isShutdown()).isTrue();
+        assertThat(replaced.connectionPool().idleConnectionCount()).isEqualTo(0);
+        assertThat(client.dispatcher().executorService().isShutdown()).isFalse();
+    }
+}
@@ -0,0 +1,91 @@
+package co.faria.turbolinks;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksSessionPoolTest extends BaseTest {
+    private TurbolinksSessionPool pool;
+
+    @Before
+    public void setup() {
+        super.setup();
+        pool = new TurbolinksSessionPool(context, 2);
+    }
+
+    @Test
+    public void acquireReturnsSameSessionPerKey() {
+        TurbolinksSession session = pool.acquire("home");
+
+        assertThat(pool.acquire("home")).isEqualTo(session);
+        assertThat(pool.acquire("inbox")).isNotEqualTo(session);
+        assertThat(pool.getHitCount()).isEqualTo(1);
+        assertThat(pool.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedSession() {
+        TurbolinksSession home = pool.acquire("home");
+        pool.acquire("inbox");
+        pool.acquire("home");
+        pool.acquire("profile");
+
+        assertThat(pool.getResidentCount()).isEqualTo(2);
+        assertThat(pool.getEvictionCount()).isEqualTo(1);
+        assertThat(pool.acquire("home")).isEqualTo(home);
+    }
+
+    @Test
+    public void trimMemoryKeepsMostRecentSession() {
+        pool.acquire("home");
+        TurbolinksSession inbox = pool.acquire("inbox");
+
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertThat(pool.getResidentCount()).isEqualTo(1);
+        assertThat(pool.acquire("inbox")).isEqualTo(inbox);
+    }
+
+    @Test
+    public void uiHiddenKeepsSessions() {
+        pool.acquire("home");
+        pool.acquire("inbox");
+
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(pool.getResidentCount()).isEqualTo(2);
+        assertThat(pool.getEvictionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void evictedSessionRebuildsItsWebView() {
+        TurbolinksSession home = pool.acquire("home");
+        pool.evict("home");
+
+        assertThat(home.webView).isNull();
+        assertThat(pool.getResidentCount()).isEqualTo(0);
+        assertThat(home.getWebView()).isNotNull();
+        assertThat(pool.getResidentCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void acquireReturnsEvictedSessionWithNewWebView() {
+        TurbolinksSession home = pool.acquire("home");
+        pool.acquire("inbox");
+        pool.acquire("profile");
+
+        assertThat(home.webView).isNull();
+        assertThat(pool.acquire("home")).isSameAs(home);
+        assertThat(home.webView).isNotNull();
+        assertThat(pool.getResidentCount()).isEqualTo(2);
+        assertThat(pool.getMissCount()).isEqualTo(4);
+    }
+}
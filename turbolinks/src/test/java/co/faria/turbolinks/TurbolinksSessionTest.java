@@ -1,19 +1,25 @@
 package co.faria.turbolinks;
 
 import android.app.Activity;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
 import android.widget.FrameLayout;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = TestBuildConfig.class)
@@ -164,15 +170,38 @@ public class TurbolinksSessionTest extends BaseTest {
         verify(adapter).visitCompleted();
     }
 
+    @Test
+    public void nextVisitKeepsPendingCompletionOfFinishedVisit() throws InterruptedException {
+        turbolinksSession.activity(new TurbolinksTestActivity())
+            .adapter(adapter);
+        turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
+
+        // Bridge callbacks arrive on the JavaBridge thread, the completion is posted
+        Thread bridge = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER);
+                turbolinksSession.visitStarted("nextVisitIdentifier", false);
+            }
+        });
+        bridge.start();
+        bridge.join();
+        ShadowLooper.runUiThreadTasks();
+
+        verify(adapter).visitCompleted(VISIT_IDENTIFIER);
+    }
+
     @Test
     public void visitCompletedSavesRestorationIdentifier() {
-        assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(0);
+        assertThat(turbolinksSession.restorationIdentifiers.size()).isEqualTo(0);
 
         turbolinksSession.activity(activity)
             .adapter(adapter);
+        turbolinksSession.restorationKey = "fragmentKey"; // taken by visit() on the main thread
         turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER);
 
-        assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(1);
+        assertThat(turbolinksSession.restorationIdentifiers.size()).isEqualTo(1);
+        assertThat(turbolinksSession.restorationIdentifiers.get("fragmentKey")).isEqualTo(RESTORATION_IDENTIFIER);
     }
 
 //    TODO: Robolectric having trouble with local resources directory
@@ -250,4 +279,34 @@ public class TurbolinksSessionTest extends BaseTest {
 
         assertThat(turbolinksSession.turbolinksIsReady()).isTrue();
     }
+
+    @Test
+    public void registeredScriptIsMarkedAfterItRan() {
+        turbolinksSession.webView = mock(WebView.class);
+        turbolinksSession.registerJavascript("count", "return 1;");
+
+        turbolinksSession.runRegisteredJavascript("count", null, null);
+        lastEvaluateCallback().onReceiveValue("1");
+
+        assertThat(turbolinksSession.registeredScriptsInPage).containsOnly("count");
+    }
+
+    @Test
+    public void staleRegistrationCallbackIsDropped() {
+        turbolinksSession.webView = mock(WebView.class);
+        turbolinksSession.registerJavascript("count", "return 1;");
+
+        turbolinksSession.runRegisteredJavascript("count", null, null);
+        turbolinksSession.registerJavascript("count", "return 2;");
+        lastEvaluateCallback().onReceiveValue("1");
+
+        assertThat(turbolinksSession.registeredScriptsInPage).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueCallback<String> lastEvaluateCallback() {
+        ArgumentCaptor<ValueCallback> callback = ArgumentCaptor.forClass(ValueCallback.class);
+        verify(turbolinksSession.webView).evaluateJavascript(anyString(), callback.capture());
+        return callback.getValue();
+    }
 }
@@ -0,0 +1,63 @@
+package co.faria.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class VisitCancellationTrackerTest extends BaseTest {
+    private VisitCancellationTracker tracker;
+
+    @Before
+    public void setup() {
+        super.setup();
+        tracker = new VisitCancellationTracker();
+    }
+
+    @Test
+    public void cancelInFlightVisit() {
+        tracker.visitStarted("visit-1");
+
+        assertThat(tracker.cancelInFlightVisit()).isEqualTo("visit-1");
+        assertThat(tracker.isCancelled("visit-1")).isTrue();
+        assertThat(tracker.getInFlightVisitIdentifier()).isNull();
+        assertThat(tracker.getCancelledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void finishedVisitIsNotCancelled() {
+        tracker.visitStarted("visit-1");
+        tracker.visitFinished("visit-1");
+
+        assertThat(tracker.cancelInFlightVisit()).isNull();
+        assertThat(tracker.isCancelled("visit-1")).isFalse();
+        assertThat(tracker.getCancelledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void newerVisitSupersedesInFlightVisit() {
+        tracker.visitStarted("visit-1");
+        tracker.visitStarted("visit-2");
+
+        assertThat(tracker.isCancelled("visit-1")).isTrue();
+        assertThat(tracker.isCancelled("visit-2")).isFalse();
+        assertThat(tracker.getInFlightVisitIdentifier()).isEqualTo("visit-2");
+    }
+
+    @Test
+    public void forgetsOldCancellations() {
+        for (int i = 0; i <= VisitCancellationTracker.CANCELLED_HISTORY_SIZE; i++) {
+            tracker.visitStarted("visit-" + i);
+            tracker.cancelInFlightVisit();
+        }
+
+        assertThat(tracker.isCancelled("visit-0")).isFalse();
+        assertThat(tracker.isCancelled("visit-1")).isTrue();
+        assertThat(tracker.getCancelledCount()).isEqualTo(VisitCancellationTracker.CANCELLED_HISTORY_SIZE + 1);
+    }
+}
@@ -0,0 +1,81 @@
+package co.faria.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class VisitTimelineRecorderTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com";
+    private static final String VISIT_IDENTIFIER = "visitIdentifierValue";
+
+    private VisitTimelineRecorder recorder;
+    private List<VisitTimeline> finished;
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        finished = new ArrayList<>();
+        recorder = new VisitTimelineRecorder(2);
+        recorder.setListener(new VisitTimelineListener() {
+            @Override
+            public void onVisitTimelineFinished(VisitTimeline timeline) {
+                finished.add(timeline.copy());
+            }
+        });
+    }
+
+    @Test
+    public void completedVisitIsDelivered() {
+        recorder.startVisit(LOCATION);
+        recorder.visitStarted(VISIT_IDENTIFIER);
+        recorder.mark(VISIT_IDENTIFIER, VisitTimeline.Phase.COMPLETED);
+
+        assertThat(finished.size()).isEqualTo(1);
+        assertThat(finished.get(0).getLocation()).isEqualTo(LOCATION);
+        assertThat(finished.get(0).hasPhase(VisitTimeline.Phase.VISIT_STARTED)).isTrue();
+    }
+
+    @Test
+    public void shownProgressDelaysDelivery() {
+        recorder.startVisit(LOCATION);
+        recorder.mark(VisitTimeline.Phase.PROGRESS_SHOWN);
+        recorder.visitStarted(VISIT_IDENTIFIER);
+        recorder.mark(VISIT_IDENTIFIER, VisitTimeline.Phase.COMPLETED);
+
+        assertThat(finished.size()).isEqualTo(0);
+
+        recorder.mark(VISIT_IDENTIFIER, VisitTimeline.Phase.PROGRESS_HIDDEN);
+
+        assertThat(finished.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void supersededVisitIsDelivered() {
+        recorder.startVisit(LOCATION);
+        recorder.startVisit(LOCATION);
+
+        assertThat(finished.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void keepsOnlyRecentTimelines() {
+        recorder.startVisit("https://basecamp.com/1");
+        recorder.startVisit("https://basecamp.com/2");
+        recorder.startVisit("https://basecamp.com/3");
+
+        List<VisitTimeline> recent = recorder.getRecentTimelines();
+        assertThat(recent.size()).isEqualTo(2);
+        assertThat(recent.get(0).getLocation()).isEqualTo("https://basecamp.com/2");
+        assertThat(recent.get(1).getLocation()).isEqualTo("https://basecamp.com/3");
+    }
+}